@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.benchmark;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.model.cellsystem.CellType;
+import de.hipphampel.cells.model.cellsystem.Neighbourhood;
+import de.hipphampel.cells.model.cellsystem.Range;
+import de.hipphampel.cells.model.cellsystem.Ranges;
+import de.hipphampel.cells.model.cellsystem.Rule;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class BenchmarkData {
+
+  private BenchmarkData() {
+  }
+
+  public static CellSystem createCellSystem(int cellTypeCount, int radius) {
+    // Conway's rules with the thresholds scaled to the size of the neighbourhood; a new cell gets the type of one of
+    // its neighbours
+    CellSystem cellSystem = new CellSystem();
+    int diameter = 2 * radius + 1;
+    cellSystem.setNeighbourhood(new Neighbourhood(Collections.nCopies(diameter * diameter, 1)));
+    for (int i = 0; i < cellTypeCount; i++) {
+      cellSystem.newCellType();
+    }
+
+    double scale = (diameter * diameter - 1) / 8.0;
+    int birth = (int) Math.round(3 * scale);
+    Ranges birthRanges = new Ranges(List.of(new Range(birth, birth + (int) (scale / 2))));
+    Ranges presentRanges = new Ranges(List.of(new Range(1, diameter * diameter)));
+    Ranges surviveRanges = new Ranges(List.of(new Range((int) Math.round(2 * scale), birth + (int) (scale / 2))));
+    for (int i = 0; i < cellTypeCount; i++) {
+      CellType cellType = cellSystem.getCellType(i);
+      cellType.setDefaultCellType(0);
+      if (i == 0) {
+        for (int j = 1; j < cellTypeCount; j++) {
+          Rule rule = cellType.newRule();
+          rule.setTargetCellType(j);
+          rule.newCondition(0, birthRanges);
+          rule.newCondition(j, presentRanges);
+        }
+      } else {
+        Rule rule = cellType.newRule();
+        rule.setTargetCellType(i);
+        rule.newCondition(0, surviveRanges);
+      }
+    }
+    return cellSystem;
+  }
+
+  public static Byte2DArray createData(int width, int height, int cellTypeCount, double density) {
+    Random random = new Random(width * 31L + height);
+    Byte2DArray data = Byte2DArray.newInstance(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        if (random.nextDouble() < density) {
+          data.setUnsafe(x, y, (byte) (1 + random.nextInt(cellTypeCount - 1)));
+        }
+      }
+    }
+    return data;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.benchmark.BenchmarkData;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulationBenchmark {
+
+  @Param({"100", "256", "512", "1024", "2048"})
+  private int size;
+  @Param({"1", "2", "3", "4"})
+  private int radius;
+  @Param({"2", "8", "32"})
+  private int cellTypeCount;
+  @Param({"0.1", "0.5"})
+  private double density;
+  @Param({"true", "false"})
+  private boolean wrapAround;
+
+  private Byte2DArray initialData;
+  private Simulation simulation;
+  private Environment environment;
+  private HaloBuffer haloBuffer;
+  private Byte2DArray target;
+
+  @Setup(Level.Trial)
+  public void setupTrial() {
+    CellSystem cellSystem = BenchmarkData.createCellSystem(cellTypeCount, radius);
+    initialData = BenchmarkData.createData(size, size, cellTypeCount, density);
+    CellCulture cellCulture = new CellCulture("benchmark", "benchmark", null, size, size, cellTypeCount, wrapAround,
+        null, initialData);
+
+    simulation = new Simulation(cellSystem, cellCulture);
+    environment = new Environment(cellSystem, cellCulture);
+    haloBuffer = new HaloBuffer(size, size, environment.getMaxRadius());
+    haloBuffer.load(initialData, wrapAround);
+    target = Byte2DArray.newInstance(size, size);
+  }
+
+  @Setup(Level.Iteration)
+  public void setupIteration() {
+    // Start each iteration with the same data, otherwise the culture might die out or become stable
+    simulation.reset(initialData);
+  }
+
+  @Benchmark
+  public Byte2DArray step() {
+    simulation.step();
+    return simulation.getData();
+  }
+
+  @Benchmark
+  public boolean computeRegion() {
+    return environment.computeRegion(haloBuffer, target, 0, 0, size, size);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.persistence.repository;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.benchmark.BenchmarkData;
+import de.hipphampel.cells.model.cellculture.CellCulture;
+import de.hipphampel.cells.model.cellculture.CellCultureDimensions;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CellCultureRepositoryBenchmark {
+
+  @Param({"100", "512", "2048"})
+  private int size;
+
+  private Path basePath;
+  private CellCultureRepository repository;
+  private CellCulture cellCulture;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    basePath = Files.createTempDirectory("cells-benchmark");
+    repository = new CellCultureRepository(basePath);
+    cellCulture = repository.newCellCulture();
+    cellCulture.setName("benchmark");
+    cellCulture.setDimensions(new CellCultureDimensions(size, size, 2));
+    cellCulture.setData(BenchmarkData.createData(size, size, 2, 0.5));
+    repository.saveCellCulture(cellCulture);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(basePath)) {
+      for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Benchmark
+  public void saveCellCulture() {
+    repository.saveCellCulture(cellCulture);
+  }
+
+  @Benchmark
+  public Byte2DArray lazyLoadCultureData() {
+    CellCulture toLoad = new CellCulture(cellCulture.getId(), cellCulture.getName(), null, size, size, 2, false,
+        null, null);
+    repository.lazyLoadCultureData(toLoad);
+    return toLoad.getData();
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.ui.cellculture;
+
+import de.hipphampel.array2dops.geom.Rectangle;
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.benchmark.BenchmarkData;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CellCultureDataRendererBenchmark {
+
+  @Param({"100", "512", "2048"})
+  private int size;
+  @Param({"2", "32"})
+  private int cellTypeCount;
+
+  private CellSystem cellSystem;
+  private Byte2DArray data;
+  private Rectangle fullRect;
+  private Rectangle viewportRect;
+  private PixelFormat<ByteBuffer> pixelFormat;
+  private int[] palette;
+  private ViewportImage viewportImage;
+  private LevelOfDetail levelOfDetail;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    // Images can be created only if the toolkit is running, so this requires a display
+    try {
+      Platform.startup(() -> {
+      });
+    } catch (IllegalStateException e) {
+      // Already started
+    }
+    cellSystem = BenchmarkData.createCellSystem(cellTypeCount, 1);
+    data = BenchmarkData.createData(size, size, cellTypeCount, 0.5);
+    fullRect = new Rectangle(0, 0, size, size);
+    viewportRect = new Rectangle(size / 4, size / 4, Math.min(size, 150), Math.min(size, 100));
+    pixelFormat = CellCultureDataRenderer.createPixelFormat(cellSystem, null);
+    palette = CellCultureDataRenderer.createPalette(cellSystem, null);
+    viewportImage = new ViewportImage();
+    levelOfDetail = new LevelOfDetail();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Platform.exit();
+  }
+
+  @Benchmark
+  public PixelFormat<ByteBuffer> createPixelFormat() {
+    return CellCultureDataRenderer.createPixelFormat(cellSystem, null);
+  }
+
+  @Benchmark
+  public Image createImageOfCulture() {
+    return CellCultureDataRenderer.createImage(data, fullRect, pixelFormat);
+  }
+
+  @Benchmark
+  public Image createImageOfViewport() {
+    return CellCultureDataRenderer.createImage(data, viewportRect, pixelFormat);
+  }
+
+  @Benchmark
+  public Image updateImageOfViewport() {
+    // A new generation changing a single cell of the viewport
+    int x = viewportRect.x() + 1;
+    int y = viewportRect.y() + 1;
+    data.setUnsafe(x, y, (byte) ((data.getUnsafe(x, y) + 1) % cellTypeCount));
+    return viewportImage.update(data, viewportRect, palette);
+  }
+
+  @Benchmark
+  public Byte2DArray reduceCultureForZoomOut() {
+    return levelOfDetail.reduce(data, 3);
+  }
+}
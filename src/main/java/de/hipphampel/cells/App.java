@@ -31,6 +31,7 @@ import de.hipphampel.cells.model.cellsystem.CellSystem;
 import de.hipphampel.cells.model.validation.Severity;
 import de.hipphampel.cells.resources.Resources;
 import de.hipphampel.cells.ui.cellculture.CellCultureView;
+import de.hipphampel.cells.ui.cellculture.PlayView;
 import de.hipphampel.cells.ui.cellsystem.CellSystemView;
 import de.hipphampel.cells.ui.common.CloseApplicationDialog;
 import de.hipphampel.cells.ui.common.ConfirmationDialog;
@@ -65,6 +66,15 @@ public class App extends Application {
     stage.show();
   }
 
+  @Override
+  public void stop() {
+    // Stops the generators of the play views, which also releases their pools
+    ViewManager.getAllViews()
+        .filter(PlayView.class::isInstance)
+        .toList()
+        .forEach(View::close);
+  }
+
   void canCloseApplication(WindowEvent evt) {
     List<ModelObject> modifiedObjects = ViewManager.getAllViews()
         .map(this::toModelObject)
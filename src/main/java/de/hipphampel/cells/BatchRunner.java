@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells;
+
+import de.hipphampel.cells.model.cellculture.CellCulture;
+import de.hipphampel.cells.model.cellculture.CycleDetector;
+import de.hipphampel.cells.model.cellculture.Simulation;
+import de.hipphampel.cells.model.cellculture.SimulationPools;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.model.validation.Severity;
+import de.hipphampel.cells.model.validation.ValidationMessage;
+import de.hipphampel.cells.model.validation.ValidationReport;
+import de.hipphampel.cells.persistence.repository.CellCultureRepository;
+import de.hipphampel.cells.persistence.repository.CellSystemRepository;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchRunner {
+
+  private static final String USAGE = """
+      Usage: BatchRunner [options] <cell culture> <generations>
+
+      Computes the given number of generations of a cell culture and stores the result as new cell culture.
+      Cell cultures and cell systems can be specified by their id or name.
+
+      Options:
+        --cell-system <cell system>  The cell system to use, default is the preferred one of the cell culture
+        --snapshots <n>              Additionally store every n-th generation as cell culture
+        --repository <directory>     The base directory of the repository, default is ~/.cells
+        --engine <default|hashlife>  The engine to use; hashlife is available only for cell systems like the Game of
+                                     Life without wrap around and computes an unbounded universe
+        --stop-on-cycle <n>          Stop as soon as a generation repeats one of the last n generations, so if the
+                                     cell culture became static or oscillates with a period up to n
+      """;
+
+  private String cellCultureRef;
+  private String cellSystemRef;
+  private int generations;
+  private int snapshotInterval;
+  private boolean hashLife;
+  private int maxCyclePeriod;
+
+  public static void main(String[] args) {
+    BatchRunner runner = new BatchRunner();
+    try {
+      runner.parseArguments(args);
+      runner.run();
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println();
+      System.err.print(USAGE);
+      System.exit(1);
+    }
+  }
+
+  void parseArguments(String[] args) {
+    int pos = 0;
+    for (; pos < args.length && args[pos].startsWith("--"); pos += 2) {
+      if (pos + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for option '" + args[pos] + "'");
+      }
+      String value = args[pos + 1];
+      switch (args[pos]) {
+        case "--cell-system" -> cellSystemRef = value;
+        case "--snapshots" -> snapshotInterval = parsePositiveInt(value);
+        case "--stop-on-cycle" -> maxCyclePeriod = parsePositiveInt(value);
+        case "--repository" -> {
+          ServiceLocator.setCellCultureRepository(new CellCultureRepository(Path.of(value)));
+          ServiceLocator.setCellSystemRepository(new CellSystemRepository(Path.of(value)));
+        }
+        case "--engine" -> hashLife = switch (value) {
+          case "default" -> false;
+          case "hashlife" -> true;
+          default -> throw new IllegalArgumentException("Unknown engine '" + value + "'");
+        };
+        default -> throw new IllegalArgumentException("Unknown option '" + args[pos] + "'");
+      }
+    }
+    if (args.length - pos != 2) {
+      throw new IllegalArgumentException("Expected cell culture and number of generations");
+    }
+    cellCultureRef = args[pos];
+    generations = parsePositiveInt(args[pos + 1]);
+  }
+
+  void run() {
+    CellCultureRepository cellCultureRepository = ServiceLocator.getCellCultureRepository();
+    CellCulture cellCulture = find(cellCultureRepository.streamCellCultures(), cellCultureRef, CellCulture::getId,
+        CellCulture::getName)
+        .orElseThrow(() -> new IllegalArgumentException("No such cell culture '" + cellCultureRef + "'"));
+    String systemRef = cellSystemRef == null ? cellCulture.getPreferredCellSystem() : cellSystemRef;
+    CellSystem cellSystem = find(ServiceLocator.getCellSystemRepository().streamCellSystems(), systemRef,
+        CellSystem::getId, CellSystem::getName)
+        .orElseThrow(() -> new IllegalArgumentException("No such cell system '" + systemRef + "'"));
+    validate(cellSystem);
+    if (cellSystem.getCellTypeCount() < cellCulture.getCellTypeCount()) {
+      throw new IllegalArgumentException(
+          "Cell system '" + cellSystem.getName() + "' has not enough cell types for cell culture '" + cellCulture.getName() + "'");
+    }
+    cellCultureRepository.lazyLoadCultureData(cellCulture);
+
+    SimulationPools pools = ServiceLocator.getSimulationPools();
+    ForkJoinPool pool = pools.acquire();
+    try {
+      compute(cellCultureRepository, cellCulture, cellSystem, new Simulation(cellSystem, cellCulture, pool));
+    } finally {
+      pools.release(pool);
+    }
+  }
+
+  private void compute(CellCultureRepository cellCultureRepository, CellCulture cellCulture, CellSystem cellSystem,
+      Simulation simulation) {
+    if (hashLife) {
+      if (!simulation.isHashLifeSupported()) {
+        throw new IllegalArgumentException("HashLife is not supported for cell system '" + cellSystem.getName() + "'");
+      }
+      simulation.setHashLifeEnabled(true);
+    }
+    CycleDetector cycleDetector = null;
+    if (maxCyclePeriod > 0) {
+      cycleDetector = new CycleDetector(maxCyclePeriod);
+      simulation.setStateHashEnabled(true);
+      cycleDetector.add(simulation.getGeneration(), simulation.getStateHash());
+    }
+    long start = System.nanoTime();
+    while (simulation.getGeneration() < generations) {
+      int stepSize = snapshotInterval > 0 ?
+          Math.min(generations, (simulation.getGeneration() / snapshotInterval + 1) * snapshotInterval) :
+          generations;
+      if (cycleDetector == null) {
+        simulation.step(stepSize - simulation.getGeneration());
+      } else if (step(simulation, cycleDetector, stepSize)) {
+        System.out.printf("Generation %d repeats generation %d, stopping%n", simulation.getGeneration(),
+            simulation.getGeneration() - cycleDetector.getPeriod());
+        break;
+      }
+      if (simulation.getGeneration() < generations) {
+        save(cellCultureRepository, cellCulture, simulation);
+      }
+    }
+    long duration = System.nanoTime() - start;
+    save(cellCultureRepository, cellCulture, simulation);
+
+    System.out.printf("Computed %d generations of '%s' with '%s' in %d ms%n",
+        simulation.getGeneration(), cellCulture.getName(), cellSystem.getName(), duration / 1_000_000);
+  }
+
+  // Computes generation by generation up to the given one, returns true if stopped because of a cycle
+  private static boolean step(Simulation simulation, CycleDetector cycleDetector, int generation) {
+    while (simulation.getGeneration() < generation) {
+      simulation.step();
+      if (cycleDetector.add(simulation.getGeneration(), simulation.getStateHash()) > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void save(CellCultureRepository repository, CellCulture cellCulture, Simulation simulation) {
+    CellCulture result = repository.newCellCulture();
+    result.copyFrom(cellCulture);
+    result.setName(cellCulture.getName() + " #" + simulation.getGeneration());
+    result.setData(simulation.getData().copy());
+    repository.saveCellCulture(result);
+    System.out.printf("Saved generation %d as '%s' (%s)%n", simulation.getGeneration(), result.getName(), result.getId());
+  }
+
+  private static void validate(CellSystem cellSystem) {
+    ValidationReport report = ServiceLocator.getValidator().validateCellSystem(cellSystem);
+    if (report.severity() == Severity.ERROR) {
+      throw new IllegalArgumentException(report.messages().stream()
+          .filter(message -> message.severity() == Severity.ERROR)
+          .map(BatchRunner::format)
+          .collect(Collectors.joining("\n", "Cell system '" + cellSystem.getName() + "' is invalid:\n", "")));
+    }
+  }
+
+  private static String format(ValidationMessage message) {
+    return message.path().isEmpty() ? "  " + message.message() : "  " + message.path() + ": " + message.message();
+  }
+
+  private static <T> Optional<T> find(Stream<T> candidates, String ref, Function<T, String> idGetter,
+      Function<T, String> nameGetter) {
+    return candidates
+        .filter(candidate -> Objects.equals(ref, idGetter.apply(candidate)) || Objects.equals(ref, nameGetter.apply(candidate)))
+        .findFirst();
+  }
+
+  private static int parsePositiveInt(String value) {
+    try {
+      int result = Integer.parseInt(value);
+      if (result > 0) {
+        return result;
+      }
+    } catch (NumberFormatException e) {
+      // Handled below
+    }
+    throw new IllegalArgumentException("Expected a positive number, but got '" + value + "'");
+  }
+}
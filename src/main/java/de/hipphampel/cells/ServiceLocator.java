@@ -22,6 +22,8 @@
  */
 package de.hipphampel.cells;
 
+import de.hipphampel.cells.model.cellculture.SimulationPoolConfig;
+import de.hipphampel.cells.model.cellculture.SimulationPools;
 import de.hipphampel.cells.persistence.repository.CellCultureRepository;
 import de.hipphampel.cells.persistence.repository.CellSystemRepository;
 import de.hipphampel.cells.ui.clipboard.ClipboardListener;
@@ -38,6 +40,7 @@ public class ServiceLocator {
   private static CellsValidator validator;
   private static ImageMerger imageMerger;
   private static ClipboardListener clipboardListener;
+  private static SimulationPools simulationPools;
 
   public static ClipboardListener getClipboardListener() {
     if (clipboardListener==null) {
@@ -100,4 +103,15 @@ public class ServiceLocator {
   public static void setImageMerger(ImageMerger imageMerger) {
     ServiceLocator.imageMerger = imageMerger;
   }
+
+  public static SimulationPools getSimulationPools() {
+    if (simulationPools == null) {
+      simulationPools = new SimulationPools(SimulationPoolConfig.fromSystemProperties());
+    }
+    return simulationPools;
+  }
+
+  public static void setSimulationPools(SimulationPools simulationPools) {
+    ServiceLocator.simulationPools = simulationPools;
+  }
 }
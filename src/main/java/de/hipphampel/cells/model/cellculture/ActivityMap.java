@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import java.util.Arrays;
+
+public final class ActivityMap {
+
+  public static final int DEFAULT_TILE_SIZE = 64;
+
+  private final int tileSize;
+  private final int tilesX;
+  private final int tilesY;
+  private final int distanceX;
+  private final int distanceY;
+  private final boolean wrapAround;
+  private final boolean[] active;
+  private final boolean[] changed;
+
+  public ActivityMap(int width, int height, int radius, boolean wrapAround) {
+    this(width, height, radius, wrapAround, DEFAULT_TILE_SIZE);
+  }
+
+  public ActivityMap(int width, int height, int radius, boolean wrapAround, int tileSize) {
+    this.tileSize = tileSize;
+    this.tilesX = (width + tileSize - 1) / tileSize;
+    this.tilesY = (height + tileSize - 1) / tileSize;
+    this.wrapAround = wrapAround;
+    // When wrapping around, a partial last tile lets the neighbourhood of a cell reach one tile further
+    int distance = (radius + tileSize - 1) / tileSize;
+    this.distanceX = distance + (wrapAround && width % tileSize != 0 ? 1 : 0);
+    this.distanceY = distance + (wrapAround && height % tileSize != 0 ? 1 : 0);
+    this.active = new boolean[tilesX * tilesY];
+    this.changed = new boolean[tilesX * tilesY];
+    markAllActive();
+  }
+
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  public int getTilesX() {
+    return tilesX;
+  }
+
+  public int getTilesY() {
+    return tilesY;
+  }
+
+  public boolean isActive(int tileX, int tileY) {
+    return active[tileX + tileY * tilesX];
+  }
+
+  public int getActiveTileCount() {
+    int count = 0;
+    for (boolean tile : active) {
+      count += tile ? 1 : 0;
+    }
+    return count;
+  }
+
+  public void markChanged(int tileX, int tileY) {
+    changed[tileX + tileY * tilesX] = true;
+  }
+
+  public void markAllActive() {
+    Arrays.fill(active, true);
+    Arrays.fill(changed, false);
+  }
+
+  // Called after a generation: only tiles within the neighbourhood radius of a changed tile may change in the next one
+  public void advance() {
+    Arrays.fill(active, false);
+    for (int tileY = 0; tileY < tilesY; tileY++) {
+      for (int tileX = 0; tileX < tilesX; tileX++) {
+        if (changed[tileX + tileY * tilesX]) {
+          activateNeighbours(tileX, tileY);
+        }
+      }
+    }
+    Arrays.fill(changed, false);
+  }
+
+  private void activateNeighbours(int tileX, int tileY) {
+    for (int dy = -distanceY; dy <= distanceY; dy++) {
+      int y = wrapAround ? Math.floorMod(tileY + dy, tilesY) : tileY + dy;
+      if (y < 0 || y >= tilesY) {
+        continue;
+      }
+      for (int dx = -distanceX; dx <= distanceX; dx++) {
+        int x = wrapAround ? Math.floorMod(tileX + dx, tilesX) : tileX + dx;
+        if (x >= 0 && x < tilesX) {
+          active[x + y * tilesX] = true;
+        }
+      }
+    }
+  }
+}
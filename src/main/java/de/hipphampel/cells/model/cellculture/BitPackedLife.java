@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Computes cell systems with two cell types, a Moore neighbourhood, and weights of one on a bit packed representation
+// of the culture, holding 64 cells per long, so that the neighbours of 64 cells are counted at once by bitwise adders
+public final class BitPackedLife {
+
+  private static final int MAX_WORDS_PER_TASK = 4096;
+
+  private final int width;
+  private final int height;
+  private final boolean wrapAround;
+  private final int wordsPerRow;
+  private final long lastWordMask;
+  private final long birthMask;
+  private final long surviveMask;
+  private final long[] emptyRow;
+  private long[] cells;
+  private long[] nextCells;
+  private final long[] rowHashes;
+  private final int rowsPerTask;
+  private final int taskCount;
+  private final AtomicInteger nextTask;
+  private final NextGeneration nextGeneration;
+  private long population;
+
+  private BitPackedLife(int width, int height, boolean wrapAround, long birthMask, long surviveMask, int parallelism) {
+    this.width = width;
+    this.height = height;
+    this.wrapAround = wrapAround;
+    this.wordsPerRow = (width + 63) / 64;
+    this.lastWordMask = width % 64 == 0 ? -1L : (1L << (width % 64)) - 1;
+    this.birthMask = birthMask;
+    this.surviveMask = surviveMask;
+    this.emptyRow = new long[wordsPerRow];
+    this.cells = new long[wordsPerRow * height];
+    this.nextCells = new long[wordsPerRow * height];
+    this.rowHashes = new long[height];
+    this.rowsPerTask = Math.max(1, MAX_WORDS_PER_TASK / wordsPerRow);
+    this.taskCount = Math.max(1, (height + rowsPerTask - 1) / rowsPerTask);
+    this.nextTask = new AtomicInteger();
+    // The task tree is reused for each generation
+    this.nextGeneration = new NextGeneration(Math.min(parallelism, taskCount));
+  }
+
+  public static BitPackedLife create(CellSystem cellSystem, int width, int height, boolean wrapAround) {
+    return create(cellSystem, width, height, wrapAround, Integer.MAX_VALUE);
+  }
+
+  // The parallelism limits the number of threads computing a generation at a time
+  public static BitPackedLife create(CellSystem cellSystem, int width, int height, boolean wrapAround,
+      int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+    }
+    LifeRules rules = LifeRules.of(cellSystem);
+    if (rules == null) {
+      return null;
+    }
+    return new BitPackedLife(width, height, wrapAround, rules.birthMask(), rules.surviveMask(), parallelism);
+  }
+
+  public void load(Byte2DArray data) {
+    if (data.getWidth() != width || data.getHeight() != height) {
+      throw new IllegalArgumentException("Invalid data size");
+    }
+    ByteBuffer buffer = data.toByteBuffer(false);
+    population = 0;
+    for (int y = 0; y < height; y++) {
+      int rowStart = y * wordsPerRow;
+      for (int word = 0; word < wordsPerRow; word++) {
+        long bits = 0;
+        int x0 = word * 64;
+        int x1 = Math.min(width, x0 + 64);
+        for (int x = x0; x < x1; x++) {
+          if (buffer.get(y * width + x) != 0) {
+            bits |= 1L << (x - x0);
+          }
+        }
+        cells[rowStart + word] = bits;
+        population += Long.bitCount(bits);
+      }
+      rowHashes[y] = hashRow(cells, y);
+    }
+  }
+
+  public void store(Byte2DArray target) {
+    if (target.getWidth() != width || target.getHeight() != height) {
+      throw new IllegalArgumentException("Invalid data size");
+    }
+    for (int y = 0; y < height; y++) {
+      int rowStart = y * wordsPerRow;
+      for (int x = 0; x < width; x++) {
+        target.setUnsafe(x, y, (byte) ((cells[rowStart + (x >> 6)] >>> x) & 1));
+      }
+    }
+  }
+
+  public long getPopulation() {
+    return population;
+  }
+
+  public long getStateHash() {
+    long hash = 0;
+    for (long rowHash : rowHashes) {
+      hash += rowHash;
+    }
+    return hash;
+  }
+
+  // The number of tasks a generation is split into
+  public int getTaskCount() {
+    return taskCount;
+  }
+
+  public void step(ForkJoinPool pool) {
+    nextTask.set(0);
+    nextGeneration.reinitialize();
+    pool.invoke(nextGeneration);
+    population = nextGeneration.population;
+    long[] swap = cells;
+    cells = nextCells;
+    nextCells = swap;
+  }
+
+  private long computeRows(int y0, int y1) {
+    long population = 0;
+    for (int y = y0; y < y1; y++) {
+      int above = y - 1;
+      int below = y + 1;
+      if (wrapAround) {
+        above = Math.floorMod(above, height);
+        below = Math.floorMod(below, height);
+      }
+      population += computeRow(y, above, below);
+    }
+    return population;
+  }
+
+  private long computeRow(int y, int above, int below) {
+    long[] aboveRow = above >= 0 && above < height ? cells : emptyRow;
+    long[] belowRow = below >= 0 && below < height ? cells : emptyRow;
+    int aboveStart = aboveRow == cells ? above * wordsPerRow : 0;
+    int belowStart = belowRow == cells ? below * wordsPerRow : 0;
+    int rowStart = y * wordsPerRow;
+
+    long population = 0;
+    for (int word = 0; word < wordsPerRow; word++) {
+      long a = aboveRow[aboveStart + word];
+      long c = cells[rowStart + word];
+      long b = belowRow[belowStart + word];
+
+      // The bits of the west and east neighbours
+      long aw = west(aboveRow, aboveStart, word);
+      long ae = east(aboveRow, aboveStart, word);
+      long cw = west(cells, rowStart, word);
+      long ce = east(cells, rowStart, word);
+      long bw = west(belowRow, belowStart, word);
+      long be = east(belowRow, belowStart, word);
+
+      // Add the eight neighbours bitwise to a four bit count (s0 to s3) per cell
+      long aSum = aw ^ a ^ ae;
+      long aCarry = (aw & a) | (ae & (aw ^ a));
+      long cSum = cw ^ ce ^ bw;
+      long cCarry = (cw & ce) | (bw & (cw ^ ce));
+      long bSum = b ^ be;
+      long bCarry = b & be;
+
+      long s0 = aSum ^ cSum ^ bSum;
+      long twos = (aSum & cSum) | (bSum & (aSum ^ cSum));
+      long carrySum = aCarry ^ cCarry ^ bCarry;
+      long fours1 = (aCarry & cCarry) | (bCarry & (aCarry ^ cCarry));
+      long s1 = carrySum ^ twos;
+      long fours2 = carrySum & twos;
+      long s2 = fours1 ^ fours2;
+      long s3 = fours1 & fours2;
+
+      long next = 0;
+      for (int count = 0; count <= 8; count++) {
+        long born = (birthMask >>> count) & 1;
+        long survived = (surviveMask >>> count) & 1;
+        if ((born | survived) == 0) {
+          continue;
+        }
+        long matches = select(s0, count & 1) & select(s1, count & 2) & select(s2, count & 4) & select(s3, count & 8);
+        next |= matches & ((-born & ~c) | (-survived & c));
+      }
+      if (word == wordsPerRow - 1) {
+        next &= lastWordMask;
+      }
+      nextCells[rowStart + word] = next;
+      population += Long.bitCount(next);
+    }
+    rowHashes[y] = hashRow(nextCells, y);
+    return population;
+  }
+
+  private long hashRow(long[] row, int y) {
+    long hash = y;
+    for (int word = y * wordsPerRow; word < (y + 1) * wordsPerRow; word++) {
+      hash = (hash + row[word]) * 0x9e3779b97f4a7c15L;
+    }
+    return CycleDetector.mix(hash);
+  }
+
+  private static long select(long bits, int set) {
+    return set != 0 ? bits : ~bits;
+  }
+
+  private long west(long[] row, int rowStart, int word) {
+    long bits = row[rowStart + word] << 1;
+    if (word > 0) {
+      return bits | (row[rowStart + word - 1] >>> 63);
+    } else if (wrapAround) {
+      return bits | ((row[rowStart + wordsPerRow - 1] >>> ((width - 1) % 64)) & 1);
+    }
+    return bits;
+  }
+
+  private long east(long[] row, int rowStart, int word) {
+    // The bits beyond the width are always zero, so they do not need to be masked here
+    long bits = row[rowStart + word] >>> 1;
+    if (word < wordsPerRow - 1) {
+      return bits | (row[rowStart + word + 1] << 63);
+    } else if (wrapAround) {
+      return bits | ((row[rowStart] & 1) << ((width - 1) % 64));
+    }
+    return bits;
+  }
+
+  // The leaves of the tree take the row ranges one by one until all are computed, so at most one thread per leaf works
+  // on a generation at a time
+  class NextGeneration extends RecursiveAction {
+
+    private final NextGeneration upper;
+    private final NextGeneration lower;
+    private long population;
+
+    NextGeneration(int leaves) {
+      if (leaves > 1) {
+        this.upper = new NextGeneration(leaves / 2);
+        this.lower = new NextGeneration(leaves - leaves / 2);
+      } else {
+        this.upper = null;
+        this.lower = null;
+      }
+    }
+
+    @Override
+    protected void compute() {
+      if (upper != null) {
+        // The subtasks completed in the previous generation, so they need to be reset before running them again
+        upper.reinitialize();
+        lower.reinitialize();
+        invokeAll(upper, lower);
+        population = upper.population + lower.population;
+      } else {
+        population = 0;
+        for (int task = nextTask.getAndIncrement(); task < taskCount; task = nextTask.getAndIncrement()) {
+          int y0 = task * rowsPerTask;
+          population += computeRows(y0, Math.min(height, y0 + rowsPerTask));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.model.cellsystem.CellType;
+import de.hipphampel.cells.model.cellsystem.Condition;
+import de.hipphampel.cells.model.cellsystem.Neighbourhood;
+import de.hipphampel.cells.model.cellsystem.Range;
+import de.hipphampel.cells.model.cellsystem.Rule;
+import java.util.Arrays;
+import java.util.List;
+
+public final class CompiledRules {
+
+  static final int MAX_TABLE_SIZE = 1 << 16;
+
+  private final int cellTypeCount;
+  private final int[] defaultCellTypes;
+  private final int[] ruleOffsets;
+  private final int[] ruleTargets;
+  private final int[] conditionOffsets;
+  private final int[] conditionCellTypes;
+  private final int[] rangeOffsets;
+  private final int[] rangeLowers;
+  private final int[] rangeUppers;
+  private final byte[][] tables;
+  private final int[][] tableCellTypes;
+  private final int[][] tableStrides;
+
+  private CompiledRules(CellSystem cellSystem) {
+    this.cellTypeCount = cellSystem.getCellTypeCount();
+    this.defaultCellTypes = new int[cellTypeCount];
+    this.ruleOffsets = new int[cellTypeCount + 1];
+
+    int ruleCount = 0;
+    int conditionCount = 0;
+    int rangeCount = 0;
+    for (CellType cellType : cellSystem.getCellTypes()) {
+      for (Rule rule : cellType.getRules()) {
+        ruleCount++;
+        for (Condition condition : rule.getConditions()) {
+          conditionCount++;
+          rangeCount += condition.getRanges() == null ? 0 : condition.getRanges().getRanges().size();
+        }
+      }
+    }
+
+    this.ruleTargets = new int[ruleCount];
+    this.conditionOffsets = new int[ruleCount + 1];
+    this.conditionCellTypes = new int[conditionCount];
+    this.rangeOffsets = new int[conditionCount + 1];
+    this.rangeLowers = new int[rangeCount];
+    this.rangeUppers = new int[rangeCount];
+
+    int ruleIndex = 0;
+    int conditionIndex = 0;
+    int rangeIndex = 0;
+    for (int i = 0; i < cellTypeCount; i++) {
+      CellType cellType = cellSystem.getCellType(i);
+      defaultCellTypes[i] = cellType.getDefaultCellType();
+      ruleOffsets[i] = ruleIndex;
+      for (Rule rule : cellType.getRules()) {
+        ruleTargets[ruleIndex] = rule.getTargetCellType();
+        conditionOffsets[ruleIndex] = conditionIndex;
+        for (Condition condition : rule.getConditions()) {
+          conditionCellTypes[conditionIndex] = condition.getCellType();
+          rangeOffsets[conditionIndex] = rangeIndex;
+          // A condition without (valid) ranges has no range to match, so it never matches
+          List<Range> ranges = condition.getRanges() == null ? List.of() : condition.getRanges().getRanges();
+          for (Range range : ranges) {
+            rangeLowers[rangeIndex] = range.lower();
+            rangeUppers[rangeIndex] = range.upper();
+            rangeIndex++;
+          }
+          conditionIndex++;
+        }
+        ruleIndex++;
+      }
+    }
+    ruleOffsets[cellTypeCount] = ruleIndex;
+    conditionOffsets[ruleCount] = conditionIndex;
+    rangeOffsets[conditionCount] = rangeIndex;
+
+    this.tables = new byte[cellTypeCount][];
+    this.tableCellTypes = new int[cellTypeCount][];
+    this.tableStrides = new int[cellTypeCount][];
+    for (int i = 0; i < cellTypeCount; i++) {
+      createTable(i, getMaxCount(cellSystem, i));
+    }
+  }
+
+  public static CompiledRules compile(CellSystem cellSystem) {
+    return new CompiledRules(cellSystem);
+  }
+
+  public int getCellTypeCount() {
+    return cellTypeCount;
+  }
+
+  public boolean hasRules(int cellType) {
+    return ruleOffsets[cellType] != ruleOffsets[cellType + 1];
+  }
+
+  public int getDefaultCellType(int cellType) {
+    return defaultCellTypes[cellType];
+  }
+
+  public boolean hasTable(int cellType) {
+    return tables[cellType] != null;
+  }
+
+  public int computeNextCellType(int cellType, int[] counters) {
+    byte[] table = tables[cellType];
+    if (table != null) {
+      int[] cellTypes = tableCellTypes[cellType];
+      int[] strides = tableStrides[cellType];
+      int index = 0;
+      for (int i = 0; i < cellTypes.length; i++) {
+        index += counters[cellTypes[i]] * strides[i];
+      }
+      return table[index] & 0xff;
+    }
+    return evaluateRules(cellType, counters);
+  }
+
+  private int evaluateRules(int cellType, int[] counters) {
+    int ruleEnd = ruleOffsets[cellType + 1];
+    for (int rule = ruleOffsets[cellType]; rule < ruleEnd; rule++) {
+      if (evaluateConditions(rule, counters)) {
+        return ruleTargets[rule];
+      }
+    }
+    return defaultCellTypes[cellType];
+  }
+
+  private boolean evaluateConditions(int rule, int[] counters) {
+    int conditionEnd = conditionOffsets[rule + 1];
+    for (int condition = conditionOffsets[rule]; condition < conditionEnd; condition++) {
+      if (!evaluateRanges(condition, counters[conditionCellTypes[condition]])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean evaluateRanges(int condition, int count) {
+    int rangeEnd = rangeOffsets[condition + 1];
+    for (int range = rangeOffsets[condition]; range < rangeEnd; range++) {
+      if (rangeLowers[range] <= count && count <= rangeUppers[range]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void createTable(int cellType, int maxCount) {
+    if (!hasRules(cellType) || maxCount < 0) {
+      return;
+    }
+
+    int[] cellTypes = Arrays.stream(conditionCellTypes, conditionOffsets[ruleOffsets[cellType]],
+            conditionOffsets[ruleOffsets[cellType + 1]])
+        .distinct()
+        .toArray();
+    int[] strides = new int[cellTypes.length];
+    long size = 1;
+    for (int i = 0; i < cellTypes.length; i++) {
+      strides[i] = (int) size;
+      size *= maxCount + 1L;
+      if (size > MAX_TABLE_SIZE) {
+        return;
+      }
+    }
+
+    // Enumerate all counter combinations, using the counters array as odometer
+    byte[] table = new byte[(int) size];
+    int[] counters = new int[cellTypeCount];
+    for (int index = 0; index < table.length; index++) {
+      table[index] = (byte) evaluateRules(cellType, counters);
+      for (int i = 0; i < cellTypes.length && ++counters[cellTypes[i]] > maxCount; i++) {
+        counters[cellTypes[i]] = 0;
+      }
+    }
+
+    tables[cellType] = table;
+    tableCellTypes[cellType] = cellTypes;
+    tableStrides[cellType] = strides;
+  }
+
+  private static int getMaxCount(CellSystem cellSystem, int cellTypeId) {
+    CellType cellType = cellSystem.getCellType(cellTypeId);
+    Neighbourhood neighbourhood = cellType.getNeighbourhood() == null ? cellSystem.getNeighbourhood() : cellType.getNeighbourhood();
+    int r = neighbourhood.getRadius();
+    int maxCount = 0;
+    for (int x = -r; x <= r; x++) {
+      for (int y = -r; y <= r; y++) {
+        int weight = neighbourhood.getWeightAt(x, y);
+        if (weight < 0) {
+          // Counters may become negative, so they cannot be used as table index
+          return -1;
+        }
+        if (x != 0 || y != 0) {
+          maxCount += weight;
+        }
+      }
+    }
+    return maxCount;
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import de.hipphampel.array2dops.model.Int2DArray;
+import java.util.stream.IntStream;
+
+// Counts the neighbours of a row segment in two passes, if the weights can be decomposed; since the center of the
+// neighbourhood is ignored, it may get any weight that helps the decomposition and is subtracted afterwards:
+// - Rings, where the weight only depends on the distance max(|dx|, |dy|) (this includes uniform boxes): the
+//   neighbourhood is a sum of nested boxes, each box is a vertical sum of its columns followed by a sliding horizontal
+//   sum. The vertical sums of the boxes with a non-zero coefficient are kept per column and rolled from one row to the
+//   next, so they are computed from scratch only for the first row of a segment
+// - Rank one, where weight(dx, dy) = u(dx) * v(dy) / p: a vertical pass with v followed by a horizontal one with u;
+//   since v weights each row differently, the vertical pass cannot be rolled and is done per row
+final class ConvolutionCounting implements RowCounting {
+
+  private final int radius;
+  private final int stride;
+  private final int cellTypeCount;
+  // Rings: coefficient of the box with radius d
+  private final int[] boxCoefficients;
+  // Rank one: the factors and the common divisor
+  private final int[] u;
+  private final int[] v;
+  private final int divisor;
+  private final int centerWeight;
+  // Rings: the radii of the boxes with a non-zero coefficient, and per counted cell type and box the number of
+  // matching cells per column, as of the previous call
+  private final int[] boxRadii;
+  private final int[][][] boxColumns;
+  private int lastIndex;
+  private int lastLength;
+  private final long[] columns;
+  private final long[] boxes;
+  // Counts per cell type, index 0 holds the weight of all non-empty cells
+  private final int[][] counts;
+
+  private ConvolutionCounting(int radius, int stride, int cellTypeCount, int maxLength, int[] boxCoefficients, int[] u,
+      int[] v, int divisor, int centerWeight) {
+    this.radius = radius;
+    this.stride = stride;
+    this.cellTypeCount = cellTypeCount;
+    this.boxCoefficients = boxCoefficients;
+    this.u = u;
+    this.v = v;
+    this.divisor = divisor;
+    this.centerWeight = centerWeight;
+    this.boxRadii = boxCoefficients == null ? null :
+        IntStream.rangeClosed(1, radius).filter(d -> boxCoefficients[d] != 0).toArray();
+    this.boxColumns = boxCoefficients == null ? null :
+        new int[cellTypeCount == 2 ? 1 : cellTypeCount - 1][boxRadii.length][maxLength + 2 * radius];
+    this.lastIndex = -1;
+    this.columns = new long[maxLength + 2 * radius];
+    this.boxes = new long[maxLength];
+    this.counts = new int[cellTypeCount][maxLength];
+  }
+
+  static ConvolutionCounting create(Int2DArray weights, int radius, int stride, int cellTypeCount, int maxLength) {
+    if (radius < 2) {
+      return null;
+    }
+    int[] boxCoefficients = getBoxCoefficients(weights, radius);
+    if (boxCoefficients != null) {
+      return new ConvolutionCounting(radius, stride, cellTypeCount, maxLength, boxCoefficients, null, null, 1,
+          sum(boxCoefficients));
+    }
+
+    // Rank one: pick a pivot outside the center row and column, derive the center weight, and check all 2x2 minors
+    for (int py = 0; py <= 2 * radius; py++) {
+      for (int px = 0; px <= 2 * radius; px++) {
+        int p = weights.getUnsafe(px, py);
+        if (px == radius || py == radius || p == 0) {
+          continue;
+        }
+        long center = (long) weights.getUnsafe(radius, py) * weights.getUnsafe(px, radius);
+        if (center % p != 0) {
+          return null;
+        }
+        int centerWeight = (int) (center / p);
+        int[] u = new int[2 * radius + 1];
+        int[] v = new int[2 * radius + 1];
+        for (int i = 0; i <= 2 * radius; i++) {
+          u[i] = weights.getUnsafe(i, py);
+          v[i] = weights.getUnsafe(px, i);
+        }
+        for (int y = 0; y <= 2 * radius; y++) {
+          for (int x = 0; x <= 2 * radius; x++) {
+            long weight = x == radius && y == radius ? centerWeight : weights.getUnsafe(x, y);
+            if (weight * p != (long) u[x] * v[y]) {
+              return null;
+            }
+          }
+        }
+        return new ConvolutionCounting(radius, stride, cellTypeCount, maxLength, null, u, v, p, centerWeight);
+      }
+    }
+    return null;
+  }
+
+  // Returns the coefficients of the nested boxes, if the weights form rings, null otherwise
+  private static int[] getBoxCoefficients(Int2DArray weights, int radius) {
+    int[] ringWeights = new int[radius + 2];
+    for (int d = 1; d <= radius; d++) {
+      ringWeights[d] = weights.getUnsafe(radius + d, radius);
+    }
+    for (int y = 0; y <= 2 * radius; y++) {
+      for (int x = 0; x <= 2 * radius; x++) {
+        int d = Math.max(Math.abs(x - radius), Math.abs(y - radius));
+        if (d > 0 && weights.getUnsafe(x, y) != ringWeights[d]) {
+          return null;
+        }
+      }
+    }
+    // The center gets the weight of the innermost ring, which is the sum of all coefficients
+    int[] boxCoefficients = new int[radius + 1];
+    for (int d = 1; d <= radius; d++) {
+      boxCoefficients[d] = ringWeights[d] - ringWeights[d + 1];
+    }
+    return boxCoefficients;
+  }
+
+  private static int sum(int[] values) {
+    int sum = 0;
+    for (int value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  @Override
+  public double getCost() {
+    // Initializing and finishing the passes is about the same as four operations
+    int cost = 4;
+    if (boxCoefficients != null) {
+      // Rolling the vertical sum and the horizontal sum, two operations each
+      cost += 4 * boxRadii.length;
+    } else {
+      for (int i = 0; i <= 2 * radius; i++) {
+        cost += (u[i] == 0 ? 0 : 1) + (v[i] == 0 ? 0 : 1);
+      }
+    }
+    return (double) cost * Math.max(1, cellTypeCount - 1);
+  }
+
+  @Override
+  public ConvolutionCounting copy() {
+    return new ConvolutionCounting(radius, stride, cellTypeCount, counts[0].length, boxCoefficients, u, v, divisor,
+        centerWeight);
+  }
+
+  @Override
+  public void count(byte[] cells, int index, int length, boolean continued) {
+    continued &= index == lastIndex + stride && length == lastLength;
+    lastIndex = index;
+    lastLength = length;
+    if (cellTypeCount == 2) {
+      countCellType(cells, index, length, continued, -1, 0, counts[0]);
+      return;
+    }
+    for (int i = 0; i < length; i++) {
+      counts[0][i] = 0;
+    }
+    for (int t = 1; t < cellTypeCount; t++) {
+      countCellType(cells, index, length, continued, t, t - 1, counts[t]);
+      for (int i = 0; i < length; i++) {
+        counts[0][i] += counts[t][i];
+      }
+    }
+  }
+
+  // Cell type -1 matches all non-empty cells; the slot selects the box columns kept for the cell type
+  private void countCellType(byte[] cells, int index, int length, boolean continued, int cellTypeId, int slot,
+      int[] count) {
+    int first = index - radius;
+    if (boxCoefficients != null) {
+      if (continued) {
+        rollBoxColumns(cells, first, length, cellTypeId, boxColumns[slot]);
+      } else {
+        initializeBoxColumns(cells, first, length, cellTypeId, boxColumns[slot]);
+      }
+      countBoxes(length, boxColumns[slot]);
+    } else {
+      countRankOne(cells, first, length, cellTypeId);
+    }
+    for (int i = 0; i < length; i++) {
+      count[i] = (int) boxes[i] - (matches(cells[index + i], cellTypeId) ? centerWeight : 0);
+    }
+  }
+
+  // Each box is the vertical sum of the next smaller one plus the rows above and below it
+  private void initializeBoxColumns(byte[] cells, int first, int length, int cellTypeId, int[][] boxColumns) {
+    int columnCount = length + 2 * radius;
+    for (int j = 0; j < columnCount; j++) {
+      columns[j] = matches(cells[first + j], cellTypeId) ? 1 : 0;
+    }
+    for (int d = 1, k = 0; k < boxRadii.length; d++) {
+      int above = first - d * stride;
+      int below = first + d * stride;
+      for (int j = 0; j < columnCount; j++) {
+        columns[j] += (matches(cells[above + j], cellTypeId) ? 1 : 0) + (matches(cells[below + j], cellTypeId) ? 1 : 0);
+      }
+      if (d == boxRadii[k]) {
+        int[] boxColumn = boxColumns[k++];
+        for (int j = 0; j < columnCount; j++) {
+          boxColumn[j] = (int) columns[j];
+        }
+      }
+    }
+  }
+
+  // Moving down by one row, the columns of a box gain the row below and lose the row above
+  private void rollBoxColumns(byte[] cells, int first, int length, int cellTypeId, int[][] boxColumns) {
+    int columnCount = length + 2 * radius;
+    for (int k = 0; k < boxRadii.length; k++) {
+      int[] boxColumn = boxColumns[k];
+      int above = first - (boxRadii[k] + 1) * stride;
+      int below = first + boxRadii[k] * stride;
+      for (int j = 0; j < columnCount; j++) {
+        boxColumn[j] += (matches(cells[below + j], cellTypeId) ? 1 : 0) - (matches(cells[above + j], cellTypeId) ? 1 : 0);
+      }
+    }
+  }
+
+  private void countBoxes(int length, int[][] boxColumns) {
+    for (int i = 0; i < length; i++) {
+      boxes[i] = 0;
+    }
+    for (int k = 0; k < boxRadii.length; k++) {
+      int d = boxRadii[k];
+      int coefficient = boxCoefficients[d];
+      int[] boxColumn = boxColumns[k];
+      // Sliding sum over the columns radius - d ... radius + d of column j = i + radius
+      long box = 0;
+      for (int j = radius - d; j < radius + d; j++) {
+        box += boxColumn[j];
+      }
+      for (int i = 0; i < length; i++) {
+        box += boxColumn[i + radius + d];
+        boxes[i] += coefficient * box;
+        box -= boxColumn[i + radius - d];
+      }
+    }
+  }
+
+  private void countRankOne(byte[] cells, int first, int length, int cellTypeId) {
+    int columnCount = length + 2 * radius;
+    for (int j = 0; j < columnCount; j++) {
+      long column = 0;
+      for (int dy = 0, row = first + j - radius * stride; dy <= 2 * radius; dy++, row += stride) {
+        if (v[dy] != 0 && matches(cells[row], cellTypeId)) {
+          column += v[dy];
+        }
+      }
+      columns[j] = column;
+    }
+    for (int i = 0; i < length; i++) {
+      long sum = 0;
+      for (int dx = 0; dx <= 2 * radius; dx++) {
+        sum += u[dx] * columns[i + dx];
+      }
+      boxes[i] = sum / divisor;
+    }
+  }
+
+  private static boolean matches(byte cell, int cellTypeId) {
+    return cellTypeId == -1 ? cell != 0 : (cell & 0xff) == cellTypeId;
+  }
+
+  @Override
+  public void getCounters(int position, int[] counters) {
+    counters[0] = counts[0][position];
+    if (cellTypeCount == 2) {
+      counters[1] = counters[0];
+    } else {
+      for (int t = 1; t < cellTypeCount; t++) {
+        counters[t] = counts[t][position];
+      }
+    }
+  }
+}
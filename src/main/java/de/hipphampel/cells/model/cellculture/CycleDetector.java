@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+// Detects that a cell culture runs into a cycle, by keeping the state hashes of the last generations. A period of one
+// means a still life, a larger period an oscillator. Since only hashes are compared, a collision could report a cycle
+// that is none, but with 64 bit hashes this is negligible
+public class CycleDetector {
+
+  public static final int DEFAULT_MAX_PERIOD = 64;
+
+  private final int[] generations;
+  private final long[] hashes;
+  private int next;
+  private int size;
+  private int period;
+
+  public CycleDetector() {
+    this(DEFAULT_MAX_PERIOD);
+  }
+
+  public CycleDetector(int maxPeriod) {
+    if (maxPeriod < 1) {
+      throw new IllegalArgumentException("Invalid maximum period");
+    }
+    this.generations = new int[maxPeriod];
+    this.hashes = new long[maxPeriod];
+  }
+
+  public int getMaxPeriod() {
+    return hashes.length;
+  }
+
+  // Returns the number of generations after which the latest state repeated, 0 if no cycle is detected
+  public int getPeriod() {
+    return period;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    next = 0;
+    size = 0;
+    period = 0;
+  }
+
+  // Adds the hash of the state of the given generation and returns the period
+  public int add(int generation, long hash) {
+    period = 0;
+    for (int i = 1; i <= size; i++) {
+      int index = Math.floorMod(next - i, hashes.length);
+      if (hashes[index] == hash && generation - generations[index] <= hashes.length) {
+        period = generation - generations[index];
+        break;
+      }
+    }
+    generations[next] = generation;
+    hashes[next] = hash;
+    next = (next + 1) % hashes.length;
+    size = Math.min(size + 1, hashes.length);
+    return period;
+  }
+
+  // Finalizer of MurmurHash3, used to spread the hashes of parts of the cell culture before combining them
+  static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb93fe53a87cdL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -26,49 +26,147 @@ import de.hipphampel.array2dops.model.Byte2DArray;
 import de.hipphampel.array2dops.model.Int2DArray;
 import de.hipphampel.cells.model.cellsystem.CellSystem;
 import de.hipphampel.cells.model.cellsystem.CellType;
-import de.hipphampel.cells.model.cellsystem.Condition;
 import de.hipphampel.cells.model.cellsystem.Neighbourhood;
-import de.hipphampel.cells.model.cellsystem.Rule;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 public class Environment {
 
+  // The Vector API is an incubator module, which is only used if added to the runtime
+  private static final boolean VECTOR_API_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
   private final CellSystem cellSystem;
-  private final CellCulture cellCulture;
-  private final Int2DArray[] weights;
+  private final CompiledRules rules;
+  private final int maxRadius;
+  private final int stride;
+  private final int[] weightGroups;
   private final int[] weightRadiuses;
+  private final int[][] weightOffsets;
+  private final int[][] weightValues;
+  private final int[] weightTotals;
+  private final int[][] columnWeights;
+  private final int[] columnWeightTotals;
+  private final int[] slidingGroups;
   private final long computationFactor;
   private final int[] counters;
-  private Byte2DArray data;
+  private final int[][] windows;
+  private final RowCounting rowCounting;
 
   public Environment(CellSystem cellSystem, CellCulture cellCulture) {
     this.cellSystem = cellSystem;
-    this.cellCulture = cellCulture;
+    this.rules = CompiledRules.compile(cellSystem);
     this.counters = new int[cellSystem.getCellTypeCount()];
-    this.weights = new Int2DArray[cellSystem.getCellTypeCount()];
-    this.weightRadiuses = new int[cellSystem.getCellTypeCount()];
-    this.data = cellCulture.getData();
+    this.weightGroups = new int[cellSystem.getCellTypeCount()];
 
+    // Cell types sharing the same neighbourhood share the same weight group, so that their counters are calculated only once
+    List<Neighbourhood> neighbourhoods = new ArrayList<>();
+    boolean[] groupHasRules = new boolean[cellSystem.getCellTypeCount()];
     int maxRadius = 1;
     for (int i = 0; i < cellSystem.getCellTypeCount(); i++) {
       CellType cellType = cellSystem.getCellType(i);
       Neighbourhood neighbourhood = cellType.getNeighbourhood() == null ? cellSystem.getNeighbourhood() : cellType.getNeighbourhood();
-      weights[i] = neighbourhood.getWeightsArray();
-      weightRadiuses[i] = neighbourhood.getRadius();
-      maxRadius = Math.max(maxRadius, weightRadiuses[i]);
+      int group = neighbourhoods.indexOf(neighbourhood);
+      if (group == -1) {
+        group = neighbourhoods.size();
+        neighbourhoods.add(neighbourhood);
+      }
+      weightGroups[i] = group;
+      groupHasRules[group] |= rules.hasRules(i);
+      maxRadius = Math.max(maxRadius, neighbourhood.getRadius());
+    }
+    this.maxRadius = maxRadius;
+    this.stride = cellCulture.getWidth() + 2 * maxRadius;
+
+    int groupCount = neighbourhoods.size();
+    this.weightRadiuses = new int[groupCount];
+    this.weightOffsets = new int[groupCount][];
+    this.weightValues = new int[groupCount][];
+    this.weightTotals = new int[groupCount];
+    this.columnWeights = new int[groupCount][];
+    this.columnWeightTotals = new int[groupCount];
+    List<Integer> slidingGroups = new ArrayList<>();
+    long computationFactor = 1;
+    for (int i = 0; i < groupCount; i++) {
+      Neighbourhood neighbourhood = neighbourhoods.get(i);
+      Int2DArray weights = neighbourhood.getWeightsArray();
+      int r = neighbourhood.getRadius();
+      weightRadiuses[i] = r;
+      initializeWeights(i, weights, r);
+      columnWeights[i] = getColumnWeights(weights, r);
+      long diameter = 2L * r + 1;
+      if (columnWeights[i] != null && groupHasRules[i]) {
+        columnWeightTotals[i] = (int) diameter * Arrays.stream(columnWeights[i]).sum();
+        slidingGroups.add(i);
+        computationFactor = Math.max(computationFactor, 2 * diameter);
+      } else {
+        computationFactor = Math.max(computationFactor, diameter * diameter);
+      }
+    }
+
+    // If all cell types with rules share one neighbourhood, the counters of a row might be computed more efficiently
+    // at once, which then replaces the sliding window
+    int ruleGroup = -1;
+    for (int i = 0; i < groupCount; i++) {
+      if (groupHasRules[i]) {
+        ruleGroup = ruleGroup == -1 ? i : -2;
+      }
+    }
+    this.rowCounting = ruleGroup >= 0 ? createRowCounting(neighbourhoods.get(ruleGroup), ruleGroup, cellCulture) : null;
+    if (rowCounting != null) {
+      slidingGroups.remove(Integer.valueOf(ruleGroup));
     }
-    this.computationFactor = (2L * maxRadius + 1) * (2L * maxRadius + 1);
+
+    this.slidingGroups = slidingGroups.stream().mapToInt(Integer::intValue).toArray();
+    this.computationFactor = computationFactor;
+    this.windows = new int[groupCount][cellSystem.getCellTypeCount()];
   }
 
   private Environment(Environment source) {
     this.cellSystem = source.cellSystem;
-    this.cellCulture = source.cellCulture;
-    this.weights = source.weights;
+    this.rules = source.rules;
+    this.maxRadius = source.maxRadius;
+    this.stride = source.stride;
+    this.weightGroups = source.weightGroups;
     this.weightRadiuses = source.weightRadiuses;
+    this.weightOffsets = source.weightOffsets;
+    this.weightValues = source.weightValues;
+    this.weightTotals = source.weightTotals;
+    this.columnWeights = source.columnWeights;
+    this.columnWeightTotals = source.columnWeightTotals;
+    this.slidingGroups = source.slidingGroups;
     this.computationFactor = source.computationFactor;
-    this.data = source.data;
     this.counters = new int[cellSystem.getCellTypeCount()];
+    this.windows = new int[weightRadiuses.length][cellSystem.getCellTypeCount()];
+    this.rowCounting = source.rowCounting == null ? null : source.rowCounting.copy();
+  }
+
+  private RowCounting createRowCounting(Neighbourhood neighbourhood, int group, CellCulture cellCulture) {
+    int cellTypeCount = cellSystem.getCellTypeCount();
+    List<RowCounting> candidates = new ArrayList<>();
+    if (VECTOR_API_AVAILABLE) {
+      candidates.add(
+          VectorCounting.create(weightOffsets[group], weightValues[group], cellTypeCount, cellCulture.getWidth()));
+    }
+    candidates.add(ConvolutionCounting.create(neighbourhood.getWeightsArray(), weightRadiuses[group], stride, cellTypeCount,
+        cellCulture.getWidth()));
+
+    // The cost of counting one neighbour at a time or by the sliding window; unlike counting a row at once, this is
+    // required only for cells having rules, so assume that all cell types are equally frequent
+    int cellTypesWithRules = 0;
+    for (int i = 0; i < cellTypeCount; i++) {
+      cellTypesWithRules += rules.hasRules(i) ? 1 : 0;
+    }
+    double cost = columnWeights[group] == null ? weightOffsets[group].length : 2 * (2 * weightRadiuses[group] + 1);
+    cost = cost * cellTypesWithRules / cellTypeCount;
+    RowCounting best = null;
+    for (RowCounting candidate : candidates) {
+      if (candidate != null && candidate.getCost() < cost) {
+        best = candidate;
+        cost = candidate.getCost();
+      }
+    }
+    return best;
   }
 
   public Environment copy() {
@@ -80,96 +178,194 @@ public class Environment {
     return computationFactor;
   }
 
-  public void setData(Byte2DArray data) {
-    this.data = data;
+  public int getMaxRadius() {
+    return maxRadius;
   }
 
-  public int computeNextCellType(int x0, int y0) {
-    CellType cellType = getCellTypeAt(x0, y0);
+  public boolean computeRegion(HaloBuffer source, Byte2DArray target, int x0, int y0, int w, int h) {
+    return computeRegion(source, target, x0, y0, w, h, null);
+  }
 
-    // If the cell type has no rules, there is no need to evaluate deeper
-    if (cellType.getRules().isEmpty()) {
-      return cellType.getDefaultCellType();
+  // If a histogram is given, the number of cells per computed cell type is added to it
+  public boolean computeRegion(HaloBuffer source, Byte2DArray target, int x0, int y0, int w, int h, int[] histogram) {
+    checkSource(source);
+    int[][] histograms = histogram == null ? null : new int[][]{histogram};
+    boolean changed = false;
+    for (int y = y0; y < y0 + h; y++) {
+      changed |= computeRow(source.getCells(), source.indexOf(x0, y), target, x0, x0 + w, y, y > y0, Integer.MAX_VALUE,
+          null, histograms);
     }
+    return changed;
+  }
 
-    int cellTypeId = cellType.getId();
+  // Computes the region like computeRegion, but keeps track per tile, where the tiles are tileSize columns wide,
+  // starting at column 0: changed[x / tileSize] is set if a cell in column x changed, and if histograms are given, the
+  // cells are counted in histograms[x / tileSize]. Unlike computing the tiles one by one, the counting of the
+  // neighbours continues over the tile borders
+  public void computeTiles(HaloBuffer source, Byte2DArray target, int x0, int y0, int w, int h, int tileSize,
+      boolean[] changed, int[][] histograms) {
+    checkSource(source);
+    if (tileSize < 1) {
+      throw new IllegalArgumentException("Invalid tile size");
+    }
+    for (int y = y0; y < y0 + h; y++) {
+      computeRow(source.getCells(), source.indexOf(x0, y), target, x0, x0 + w, y, y > y0, tileSize, changed,
+          histograms);
+    }
+  }
 
-    calculateCounters(cellTypeId, x0, y0);
-    int newCellTypeId = evaluateRules(cellType.getRules());
-    return newCellTypeId == -1 ? cellType.getDefaultCellType() : newCellTypeId;
+  private void checkSource(HaloBuffer source) {
+    if (source.getStride() != stride || source.getHalo() < maxRadius) {
+      throw new IllegalArgumentException("Buffer does not match environment");
+    }
   }
 
-  private int evaluateRules(List<Rule> rules) {
-    for (Rule rule : rules) {
-      if (evaluateConditions(rule.getConditions())) {
-        return rule.getTargetCellType();
+  // The source is padded by a halo of at least maxRadius cells, so no bounds checks or wrapping is required here.
+  // Continued is set if the previous call computed the row above with the same columns
+  private boolean computeRow(byte[] cells, int index, Byte2DArray target, int x0, int x1, int y, boolean continued,
+      int tileSize, boolean[] changed, int[][] histograms) {
+    if (x0 >= x1) {
+      return false;
+    }
+    for (int group : slidingGroups) {
+      initializeWindow(group, cells, index);
+    }
+    if (rowCounting != null) {
+      rowCounting.count(cells, index, x1 - x0, continued);
+    }
+
+    boolean rowChanged = false;
+    for (int x = x0; x < x1; ) {
+      int tile = x / tileSize;
+      int tileEnd = (int) Math.min(x1, (tile + 1L) * tileSize);
+      int[] histogram = histograms == null ? null : histograms[tile];
+      boolean tileChanged = false;
+      for (; x < tileEnd; x++, index++) {
+        int cellTypeId = cells[index] & 0xff;
+        int newCellTypeId;
+        if (!rules.hasRules(cellTypeId)) {
+          newCellTypeId = rules.getDefaultCellType(cellTypeId);
+        } else if (rowCounting != null) {
+          rowCounting.getCounters(x - x0, counters);
+          newCellTypeId = rules.computeNextCellType(cellTypeId, counters);
+        } else if (columnWeights[weightGroups[cellTypeId]] != null) {
+          newCellTypeId = computeNextCellTypeFromWindow(cellTypeId);
+        } else {
+          calculateCounters(cellTypeId, cells, index);
+          newCellTypeId = rules.computeNextCellType(cellTypeId, counters);
+        }
+        target.setUnsafe(x, y, (byte) newCellTypeId);
+        tileChanged |= newCellTypeId != cellTypeId;
+        if (histogram != null) {
+          histogram[newCellTypeId]++;
+        }
+
+        if (x + 1 < x1) {
+          for (int group : slidingGroups) {
+            slideWindow(group, cells, index);
+          }
+        }
       }
+      if (tileChanged && changed != null) {
+        changed[tile] = true;
+      }
+      rowChanged |= tileChanged;
     }
-    return -1;
+    return rowChanged;
   }
 
-  private boolean evaluateConditions(List<Condition> conditions) {
-    for (Condition condition : conditions) {
-      int cellTypeId = condition.getCellType();
-      int count = counters[cellTypeId];
-      if (!condition.getRanges().contains(count)) {
-        return false;
-      }
+  private int computeNextCellTypeFromWindow(int cellTypeId) {
+    // The window includes the cell itself, which is not part of its neighbourhood. Counter 0 of the window holds
+    // the weight of the empty cells, whereas the rules expect the weight of all non-empty cells there
+    int group = weightGroups[cellTypeId];
+    int[] window = windows[group];
+    int centerWeight = columnWeights[group][weightRadiuses[group]];
+    window[cellTypeId] -= centerWeight;
+    int emptyWeight = window[0];
+    window[0] = columnWeightTotals[group] - centerWeight - emptyWeight;
+    int newCellTypeId = rules.computeNextCellType(cellTypeId, window);
+    window[0] = emptyWeight;
+    window[cellTypeId] += centerWeight;
+    return newCellTypeId;
+  }
+
+  private void initializeWindow(int group, byte[] cells, int index) {
+    int[] window = windows[group];
+    int r = weightRadiuses[group];
+    Arrays.fill(window, 0);
+    for (int dx = -r; dx <= r; dx++) {
+      addColumn(window, columnWeights[group], r, cells, index + dx, 1);
     }
-    return true;
   }
 
+  private void slideWindow(int group, byte[] cells, int index) {
+    int[] window = windows[group];
+    int r = weightRadiuses[group];
+    addColumn(window, columnWeights[group], r, cells, index - r, -1);
+    addColumn(window, columnWeights[group], r, cells, index + r + 1, 1);
+  }
 
-  private void calculateCounters(int cellTypeId, int x0, int y0) {
-    // Initialize
-    int w = cellCulture.getWidth();
-    int h = cellCulture.getHeight();
-    boolean wrapAround = cellCulture.isWrapAround();
-    int r = weightRadiuses[cellTypeId];
-    Int2DArray ws = weights[cellTypeId];
-    Arrays.fill(counters, 0);
+  private void addColumn(int[] window, int[] columnWeights, int r, byte[] cells, int index, int sign) {
+    index -= r * stride;
+    for (int dy = 0; dy <= 2 * r; dy++, index += stride) {
+      window[cells[index] & 0xff] += sign * columnWeights[dy];
+    }
+  }
 
-    for (int x = 2 * r; x >= 0; x--) {
-      for (int y = 2 * r; y >= 0; y--) {
-        int weight = ws.getUnsafe(x, y);
-        if (weight == 0 || (x == r && y == r)) {
-          continue;
-        }
+  private void calculateCounters(int cellTypeId, byte[] cells, int index) {
+    // Counter 0 first collects the weight of the empty cells, see computeNextCellTypeFromWindow
+    int group = weightGroups[cellTypeId];
+    int[] offsets = weightOffsets[group];
+    int[] values = weightValues[group];
+    Arrays.fill(counters, 0);
 
-        int xc = x0 + x - r;
-        int yc = y0 + y - r;
+    for (int i = 0; i < offsets.length; i++) {
+      counters[cells[index + offsets[i]] & 0xff] += values[i];
+    }
+    counters[0] = weightTotals[group] - counters[0];
+  }
 
-        if (wrapAround) {
-          while (xc < 0) {
-            xc += w;
-          }
-          while (xc >= w) {
-            xc -= w;
-          }
-          while (yc < 0) {
-            yc += h;
-          }
-          while (yc >= h) {
-            yc -= h;
-          }
-        } else if (xc < 0 || xc >= data.getWidth() || yc < 0 || yc >= data.getHeight()) {
-          continue;
+  private void initializeWeights(int group, Int2DArray weights, int r) {
+    int count = 0;
+    for (int y = 0; y <= 2 * r; y++) {
+      for (int x = 0; x <= 2 * r; x++) {
+        if ((x != r || y != r) && weights.getUnsafe(x, y) != 0) {
+          count++;
         }
+      }
+    }
 
-        int type = data.getUnsafe(xc, yc);
-        if (type == 0) {
-          continue;
+    int[] offsets = new int[count];
+    int[] values = new int[count];
+    int i = 0;
+    for (int y = 0; y <= 2 * r; y++) {
+      for (int x = 0; x <= 2 * r; x++) {
+        if ((x != r || y != r) && weights.getUnsafe(x, y) != 0) {
+          offsets[i] = (y - r) * stride + x - r;
+          values[i] = weights.getUnsafe(x, y);
+          weightTotals[group] += values[i];
+          i++;
         }
-        counters[0] += weight;
-        counters[type] += weight;
       }
     }
+    weightOffsets[group] = offsets;
+    weightValues[group] = values;
   }
 
-  private CellType getCellTypeAt(int x0, int y0) {
-    int cellTypeId = data.getUnsafe(x0, y0);
-    return cellSystem.getCellType(cellTypeId);
+  // Returns the weight per row, if the weights only depend on the row (ignoring the center), null otherwise
+  private static int[] getColumnWeights(Int2DArray weights, int r) {
+    if (r == 0) {
+      return null;
+    }
+    int[] columnWeights = new int[2 * r + 1];
+    for (int y = 0; y <= 2 * r; y++) {
+      columnWeights[y] = weights.getUnsafe(y == r ? r + 1 : r, y);
+      for (int x = 0; x <= 2 * r; x++) {
+        if ((x != r || y != r) && weights.getUnsafe(x, y) != columnWeights[y]) {
+          return null;
+        }
+      }
+    }
+    return columnWeights;
   }
-
-
 }
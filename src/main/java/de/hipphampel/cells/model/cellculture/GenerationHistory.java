@@ -0,0 +1,274 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Keeps the data of the past generations in a compact form: each generation is stored as the XOR with the previous
+// one, run length encoded, so that the cells not changed take almost no space. Keyframes are encoded the same way,
+// but relative to an empty culture. Frames are evicted by whole keyframe groups, the oldest first, when exceeding the
+// memory budget. It is written by the thread computing the generations and read by the FX thread, hence synchronized
+public class GenerationHistory {
+
+  public static final String MEMORY_BUDGET_PROPERTY = "cells.history.memoryBudget";
+  public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+  private static final int MAX_FRAMES_PER_KEYFRAME = 64;
+  private static final int FRAME_OVERHEAD = 32;
+
+  private final int width;
+  private final int height;
+  private final long memoryBudget;
+  private final List<Frame> frames;
+  private byte[] previous;
+  private byte[] current;
+  private byte[] encoded;
+  private int previousGeneration;
+  private int lastKeyframe;
+  private long deltaSizeSinceKeyframe;
+  private long memoryUsage;
+
+  public GenerationHistory(int width, int height) {
+    this(width, height, getDefaultMemoryBudget());
+  }
+
+  public GenerationHistory(int width, int height, long memoryBudget) {
+    if (width < 1 || height < 1 || memoryBudget < 1) {
+      throw new IllegalArgumentException("Invalid history size");
+    }
+    this.width = width;
+    this.height = height;
+    this.memoryBudget = memoryBudget;
+    this.frames = new ArrayList<>();
+    this.previous = new byte[width * height];
+    this.current = new byte[width * height];
+    this.encoded = new byte[64];
+    this.previousGeneration = -1;
+  }
+
+  // The budget is given in megabytes
+  public static long getDefaultMemoryBudget() {
+    Long megabytes = Long.getLong(MEMORY_BUDGET_PROPERTY);
+    return megabytes == null ? DEFAULT_MEMORY_BUDGET : megabytes << 20;
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  public synchronized long getMemoryUsage() {
+    return memoryUsage;
+  }
+
+  public synchronized boolean isEmpty() {
+    return frames.isEmpty();
+  }
+
+  public synchronized int getFirstGeneration() {
+    return frames.isEmpty() ? -1 : frames.get(0).generation();
+  }
+
+  public synchronized int getLastGeneration() {
+    return frames.isEmpty() ? -1 : frames.get(frames.size() - 1).generation();
+  }
+
+  public synchronized void clear() {
+    frames.clear();
+    previousGeneration = -1;
+    memoryUsage = 0;
+  }
+
+  // Frames of the given or later generations are replaced, so after restoring an older generation the history
+  // continues from there
+  public synchronized void add(int generation, Byte2DArray data) {
+    if (data.getWidth() != width || data.getHeight() != height) {
+      throw new IllegalArgumentException("Invalid data size");
+    }
+    int index = indexOf(generation);
+    if (index >= 0 && frames.get(index).generation() == generation) {
+      index--;
+    }
+    truncate(index + 1);
+
+    data.toByteBuffer(false).get(0, current);
+    boolean keyframe = frames.isEmpty()
+        || previousGeneration != frames.get(frames.size() - 1).generation()
+        || frames.size() - lastKeyframe >= MAX_FRAMES_PER_KEYFRAME
+        || deltaSizeSinceKeyframe > frames.get(lastKeyframe).data().length
+        || memoryUsage > memoryBudget;
+    if (keyframe) {
+      Arrays.fill(previous, (byte) 0);
+    }
+    Frame frame = new Frame(generation, keyframe, encode(previous, current));
+    if (keyframe) {
+      lastKeyframe = frames.size();
+      deltaSizeSinceKeyframe = 0;
+    } else {
+      deltaSizeSinceKeyframe += frame.data().length;
+    }
+    frames.add(frame);
+    memoryUsage += frame.data().length + FRAME_OVERHEAD;
+
+    byte[] swap = previous;
+    previous = current;
+    current = swap;
+    previousGeneration = generation;
+    evict();
+  }
+
+  // Restores the latest generation not after the given one and returns it, or -1 if there is none
+  public synchronized int restore(int generation, Byte2DArray target) {
+    if (target.getWidth() != width || target.getHeight() != height) {
+      throw new IllegalArgumentException("Invalid data size");
+    }
+    int index = indexOf(generation);
+    if (index < 0) {
+      return -1;
+    }
+    int start = index;
+    while (!frames.get(start).keyframe()) {
+      start--;
+    }
+    byte[] cells = target.getData();
+    Arrays.fill(cells, (byte) 0);
+    for (int i = start; i <= index; i++) {
+      decode(frames.get(i).data(), cells);
+    }
+    return frames.get(index).generation();
+  }
+
+  // Returns the index of the latest frame not after the given generation, -1 if there is none
+  private int indexOf(int generation) {
+    int low = 0;
+    int high = frames.size() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (frames.get(middle).generation() <= generation) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return high;
+  }
+
+  private void truncate(int size) {
+    while (frames.size() > size) {
+      memoryUsage -= frames.remove(frames.size() - 1).data().length + FRAME_OVERHEAD;
+    }
+    lastKeyframe = frames.size() - 1;
+    deltaSizeSinceKeyframe = 0;
+    while (lastKeyframe > 0 && !frames.get(lastKeyframe).keyframe()) {
+      deltaSizeSinceKeyframe += frames.get(lastKeyframe).data().length;
+      lastKeyframe--;
+    }
+    lastKeyframe = Math.max(lastKeyframe, 0);
+  }
+
+  // Drops the oldest keyframe group as long as the budget is exceeded; the latest group is always kept
+  private void evict() {
+    while (memoryUsage > memoryBudget && lastKeyframe > 0) {
+      int end = 1;
+      while (!frames.get(end).keyframe()) {
+        end++;
+      }
+      List<Frame> group = frames.subList(0, end);
+      for (Frame frame : group) {
+        memoryUsage -= frame.data().length + FRAME_OVERHEAD;
+      }
+      group.clear();
+      lastKeyframe -= end;
+    }
+  }
+
+  // Encodes the XOR of the two arrays as a sequence of the number of equal bytes, the number of differing bytes, and
+  // the XOR of the differing bytes, the numbers written as variable length integers
+  private byte[] encode(byte[] before, byte[] after) {
+    int length = 0;
+    int pos = 0;
+    while (pos < after.length) {
+      int mismatch = Arrays.mismatch(before, pos, before.length, after, pos, after.length);
+      int equal = mismatch < 0 ? after.length - pos : mismatch;
+      int differing = 0;
+      while (pos + equal + differing < after.length && before[pos + equal + differing] != after[pos + equal + differing]) {
+        differing++;
+      }
+      ensureCapacity(length + 10 + differing);
+      length = writeVarInt(equal, length);
+      length = writeVarInt(differing, length);
+      pos += equal;
+      for (int i = 0; i < differing; i++, pos++) {
+        encoded[length++] = (byte) (before[pos] ^ after[pos]);
+      }
+    }
+    return Arrays.copyOf(encoded, length);
+  }
+
+  private static void decode(byte[] data, byte[] cells) {
+    int index = 0;
+    int pos = 0;
+    while (index < data.length) {
+      int equal = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = data[index++];
+        equal |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          break;
+        }
+      }
+      int differing = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = data[index++];
+        differing |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          break;
+        }
+      }
+      pos += equal;
+      for (int i = 0; i < differing; i++, pos++) {
+        cells[pos] ^= data[index++];
+      }
+    }
+  }
+
+  private int writeVarInt(int value, int index) {
+    while ((value & ~0x7f) != 0) {
+      encoded[index++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    encoded[index++] = (byte) value;
+    return index;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (encoded.length < capacity) {
+      encoded = Arrays.copyOf(encoded, Math.max(capacity, encoded.length * 2));
+    }
+  }
+
+  private record Frame(int generation, boolean keyframe, byte[] data) {
+
+  }
+}
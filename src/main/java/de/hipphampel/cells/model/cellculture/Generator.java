@@ -24,20 +24,29 @@ package de.hipphampel.cells.model.cellculture;
 
 import de.hipphampel.array2dops.model.Byte2DArray;
 import de.hipphampel.cells.model.cellsystem.CellSystem;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ForkJoinTask;
-import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.ReadOnlyIntegerProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class Generator {
 
@@ -45,26 +54,74 @@ public class Generator {
     IDLE,
     STEPPING,
     PLAYING,
+    FAST_FORWARDING,
     STOPPING
   }
 
-  private static final ForkJoinPool pool = new ForkJoinPool();
-  private final CellSystem cellSystem;
+  private static final Logger LOGGER = LoggerFactory.getLogger(Generator.class);
+  private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+
+  private final SimulationPools pools;
+  private final ForkJoinPool pool;
+  private final ExecutorService control;
+  private final Executor fxExecutor;
   private final CellCulture cellCulture;
-  private final Environment environment;
+  private final Simulation simulation;
+  private final Byte2DArray[] displayBuffers;
+  private Byte2DArray lastPublished;
+  private volatile CountDownLatch publication;
+  private final AtomicBoolean snapshotRequested;
   private final Byte2DArray initialData;
   private final IntegerProperty generation;
   private final DoubleProperty speed;
+  private final BooleanProperty freeRunning;
+  private final BooleanProperty hashLife;
+  private final BooleanProperty recordPopulation;
+  private final PopulationHistory populationHistory;
+  private final CycleDetector cycleDetector;
+  private final IntegerProperty period;
+  private final BooleanProperty stopOnCycle;
+  private final GenerationHistory generationHistory;
+  private final BooleanProperty recordHistory;
   private final ObjectProperty<State> state;
+  private final DoubleProperty progress;
+  private final GeneratorMetrics metrics;
+  private final ObjectName metricsName;
+
+  public Generator(CellSystem cellSystem, CellCulture cellCulture, SimulationPools pools) {
+    this(cellSystem, cellCulture, pools, Platform::runLater);
+  }
 
-  public Generator(CellSystem cellSystem, CellCulture cellCulture) {
-    this.cellSystem = cellSystem;
+  // The FX executor updates the properties and the cell culture; this is the FX thread, unless running without UI
+  Generator(CellSystem cellSystem, CellCulture cellCulture, SimulationPools pools, Executor fxExecutor) {
+    this.fxExecutor = fxExecutor;
     this.cellCulture = cellCulture;
     this.initialData = cellCulture.getData().copy();
-    this.environment = new Environment(cellSystem, cellCulture);
+    this.pools = pools;
+    this.pool = pools.acquire();
+    this.control = pools.newControlExecutor();
+    this.simulation = new Simulation(cellSystem, cellCulture, pool, pools.getGeneratorParallelism());
+    this.displayBuffers = new Byte2DArray[]{
+        Byte2DArray.newInstance(cellCulture.getWidth(), cellCulture.getHeight()),
+        Byte2DArray.newInstance(cellCulture.getWidth(), cellCulture.getHeight())
+    };
+    this.publication = new CountDownLatch(0);
+    this.snapshotRequested = new AtomicBoolean(true);
     this.generation = new SimpleIntegerProperty(this, "generation");
     this.state = new SimpleObjectProperty<>(this, "state", State.IDLE);
+    this.progress = new SimpleDoubleProperty(this, "progress");
+    this.metrics = new GeneratorMetrics(pool, (long) cellCulture.getWidth() * cellCulture.getHeight());
+    this.metricsName = registerMetrics(cellCulture);
     this.speed = new SimpleDoubleProperty(this, "speed");
+    this.freeRunning = new SimpleBooleanProperty(this, "freeRunning");
+    this.hashLife = new SimpleBooleanProperty(this, "hashLife");
+    this.recordPopulation = new SimpleBooleanProperty(this, "recordPopulation");
+    this.populationHistory = new PopulationHistory(cellSystem.getCellTypeCount());
+    this.cycleDetector = new CycleDetector();
+    this.period = new SimpleIntegerProperty(this, "period");
+    this.stopOnCycle = new SimpleBooleanProperty(this, "stopOnCycle");
+    this.generationHistory = new GenerationHistory(cellCulture.getWidth(), cellCulture.getHeight());
+    this.recordHistory = new SimpleBooleanProperty(this, "recordHistory");
   }
 
   public int getGeneration() {
@@ -83,6 +140,19 @@ public class Generator {
     return state;
   }
 
+  // The progress of a fast forward, between 0 and 1
+  public double getProgress() {
+    return progress.get();
+  }
+
+  public ReadOnlyDoubleProperty progressProperty() {
+    return progress;
+  }
+
+  public GeneratorMetrics getMetrics() {
+    return metrics;
+  }
+
   public double getSpeed() {
     return speed.get();
   }
@@ -95,12 +165,99 @@ public class Generator {
     this.speed.set(speed);
   }
 
+  public boolean isFreeRunning() {
+    return freeRunning.get();
+  }
+
+  public BooleanProperty freeRunningProperty() {
+    return freeRunning;
+  }
+
+  public void setFreeRunning(boolean freeRunning) {
+    this.freeRunning.set(freeRunning);
+  }
+
+  public boolean isHashLifeSupported() {
+    return simulation.isHashLifeSupported();
+  }
+
+  public boolean isHashLife() {
+    return hashLife.get();
+  }
+
+  public BooleanProperty hashLifeProperty() {
+    return hashLife;
+  }
+
+  public void setHashLife(boolean hashLife) {
+    this.hashLife.set(hashLife);
+  }
+
+  public boolean isRecordPopulation() {
+    return recordPopulation.get();
+  }
+
+  public BooleanProperty recordPopulationProperty() {
+    return recordPopulation;
+  }
+
+  public void setRecordPopulation(boolean recordPopulation) {
+    this.recordPopulation.set(recordPopulation);
+  }
+
+  public PopulationHistory getPopulationHistory() {
+    return populationHistory;
+  }
+
+  // The number of generations after which the displayed generation repeated, 0 if no cycle is detected. Cycles are
+  // only detected while stopOnCycle is set
+  public int getPeriod() {
+    return period.get();
+  }
+
+  public ReadOnlyIntegerProperty periodProperty() {
+    return period;
+  }
+
+  public boolean isStopOnCycle() {
+    return stopOnCycle.get();
+  }
+
+  public BooleanProperty stopOnCycleProperty() {
+    return stopOnCycle;
+  }
+
+  public void setStopOnCycle(boolean stopOnCycle) {
+    this.stopOnCycle.set(stopOnCycle);
+  }
+
+  public boolean isRecordHistory() {
+    return recordHistory.get();
+  }
+
+  public BooleanProperty recordHistoryProperty() {
+    return recordHistory;
+  }
+
+  public void setRecordHistory(boolean recordHistory) {
+    this.recordHistory.set(recordHistory);
+  }
+
+  public GenerationHistory getGenerationHistory() {
+    return generationHistory;
+  }
+
   public void reset() {
     if (getState() != State.IDLE) {
       return;
     }
     cellCulture.setData(initialData.copy());
+    simulation.reset(cellCulture.getData());
+    populationHistory.clear();
+    cycleDetector.clear();
+    generationHistory.clear();
     generation.set(0);
+    period.set(0);
   }
 
   public void step() {
@@ -108,7 +265,48 @@ public class Generator {
       return;
     }
     state.set(State.STEPPING);
-    pool.submit(new NextGeneration());
+    Options options = captureOptions();
+    submit(() -> {
+      apply(options);
+      computeStep();
+      afterStep(options, 1);
+      publish(true);
+    });
+  }
+
+  public void jump(int k) {
+    if (getState() != State.IDLE) {
+      return;
+    }
+    if (k < 0 || k > 30 || getGeneration() + (1L << k) > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid jump");
+    }
+    state.set(State.STEPPING);
+    Options options = captureOptions();
+    submit(() -> {
+      apply(options);
+      computeJump(k);
+      afterStep(options, 1 << k);
+      publish(true);
+    });
+  }
+
+  // Goes back (or forth) to the latest generation in the history not after the given one
+  public void seek(int generation) {
+    if (getState() != State.IDLE) {
+      return;
+    }
+    state.set(State.STEPPING);
+    submit(() -> {
+      Byte2DArray data = Byte2DArray.newInstance(cellCulture.getWidth(), cellCulture.getHeight());
+      int restored = generationHistory.restore(generation, data);
+      if (restored >= 0) {
+        simulation.reset(data, restored);
+        populationHistory.clear();
+        cycleDetector.clear();
+      }
+      publish(true);
+    });
   }
 
   public void play() {
@@ -117,130 +315,269 @@ public class Generator {
     }
 
     state.set(State.PLAYING);
-    pool.submit(new PlayLoop());
+    submit(new PlayLoop(captureOptions()));
+  }
+
+  // Computes the given number of generations as fast as possible and shows only the last one. Like playing, this can
+  // be stopped, in which case the generation computed so far is shown
+  public void fastForward(int generations) {
+    if (getState() != State.IDLE) {
+      return;
+    }
+    if (generations < 1 || getGeneration() + (long) generations > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid number of generations");
+    }
+    state.set(State.FAST_FORWARDING);
+    progress.set(0);
+    submit(new FastForward(captureOptions(), generations));
   }
 
   public void stop() {
-    if (getState() != State.PLAYING) {
+    if (getState() != State.PLAYING && getState() != State.FAST_FORWARDING) {
       return;
     }
     state.set(State.STOPPING);
   }
 
-  class PlayLoop implements Runnable {
+  // Called by the UI when it is ready to show the next generation. When free running, generations are only published
+  // on request, so that no generations are copied that are never shown
+  public void requestSnapshot() {
+    snapshotRequested.set(true);
+  }
 
-    @Override
-    public void run() {
-      while (getState() == State.PLAYING) {
-        ForkJoinTask<Void> action = pool.submit(new NextGeneration());
-        try {
-          long start = System.nanoTime();
-          action.get();
+  public void close() {
+    stop();
+    // Runs after a pending step or play loop, since the control executor has a single thread
+    control.execute(() -> pools.release(pool));
+    control.shutdown();
+    unregisterMetrics();
+  }
 
-          double requiredSleep = (Math.abs(getSpeed() * 1_000_000) - System.nanoTime() + start) / 1_000_000;
-          if (requiredSleep >= 1) {
-            Thread.sleep((long) requiredSleep);
-          }
+  private ObjectName registerMetrics(CellCulture cellCulture) {
+    try {
+      ObjectName name = new ObjectName("de.hipphampel.cells:type=Generator,id=" + INSTANCE_COUNTER.incrementAndGet()
+          + ",name=" + ObjectName.quote(String.valueOf(cellCulture.getName())));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+      return name;
+    } catch (JMException e) {
+      LOGGER.warn("Failed to register the metrics of the generator", e);
+      return null;
+    }
+  }
 
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-          throw new RuntimeException(e);
-        } catch (ExecutionException e) {
-          throw new RuntimeException(e);
-        }
+  private void unregisterMetrics() {
+    if (metricsName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+    } catch (JMException e) {
+      LOGGER.warn("Failed to unregister the metrics of the generator", e);
+    }
+  }
+
+  // Runs the given computation in the control thread. Afterwards, the state returns to IDLE, even if the computation
+  // failed
+  private void submit(Runnable computation) {
+    control.submit(() -> {
+      try {
+        computation.run();
+      } catch (RuntimeException e) {
+        LOGGER.error("Failed to compute the generations of the cell culture", e);
+      } finally {
+        fxExecutor.execute(() -> state.set(State.IDLE));
       }
-      if (getState() == State.STOPPING) {
-        Platform.runLater(() -> state.set(State.IDLE));
+    });
+  }
+
+  private void computeStep() {
+    long start = System.nanoTime();
+    simulation.step();
+    metrics.recordCompute(1, System.nanoTime() - start);
+  }
+
+  private void computeJump(int k) {
+    long start = System.nanoTime();
+    simulation.jump(k);
+    metrics.recordCompute(1 << k, System.nanoTime() - start);
+  }
+
+  // The options are captured in the FX thread when starting a computation
+  private Options captureOptions() {
+    return new Options(isFreeRunning(), isHashLife() && isHashLifeSupported(), isRecordPopulation(),
+        isStopOnCycle(), isRecordHistory());
+  }
+
+  private void apply(Options options) {
+    if (options.hashLife() != simulation.isHashLifeEnabled()) {
+      // The state hashes of the engines are not comparable
+      cycleDetector.clear();
+    }
+    simulation.setHashLifeEnabled(options.hashLife());
+    simulation.setHistogramEnabled(options.recordPopulation());
+    // The state hashes are only maintained while cycles are to be detected
+    simulation.setStateHashEnabled(options.stopOnCycle());
+    if (options.recordPopulation() && populationHistory.size() == 0) {
+      populationHistory.add(simulation.getGeneration(), simulation.getHistogram());
+    }
+    if (!options.stopOnCycle()) {
+      cycleDetector.clear();
+    } else if (cycleDetector.isEmpty()) {
+      cycleDetector.add(simulation.getGeneration(), simulation.getStateHash());
+    }
+    if (options.recordHistory() && generationHistory.getLastGeneration() != simulation.getGeneration()) {
+      generationHistory.add(simulation.getGeneration(), simulation.getData());
+    }
+  }
+
+  private void afterStep(Options options, int generations) {
+    if (options.recordPopulation()) {
+      populationHistory.add(simulation.getGeneration(), simulation.getHistogram());
+    }
+    if (options.stopOnCycle()) {
+      if (generations > 1) {
+        // The period of a cycle within the skipped generations would be reported as a multiple of the true one, so
+        // the detection starts over after a jump
+        cycleDetector.clear();
       }
+      cycleDetector.add(simulation.getGeneration(), simulation.getStateHash());
+    }
+    if (options.recordHistory()) {
+      generationHistory.add(simulation.getGeneration(), simulation.getData());
+    }
+  }
+
+  // Returns false if the generation was dropped because the previous publication is not complete yet
+  private boolean publish(boolean waitForCompletion) {
+    long start = System.nanoTime();
+    if (publication.getCount() > 0) {
+      if (!waitForCompletion) {
+        return false;
+      }
+      await(publication);
+    }
+
+    // The FX thread took over the last published buffer, so the other one is free to be overwritten
+    Byte2DArray display = displayBuffers[0] == lastPublished ? displayBuffers[1] : displayBuffers[0];
+    simulation.copyData(display);
+    lastPublished = display;
+    int displayGeneration = simulation.getGeneration();
+    int displayPeriod = cycleDetector.getPeriod();
+    CountDownLatch latch = new CountDownLatch(1);
+    publication = latch;
+    fxExecutor.execute(() -> {
+      cellCulture.setData(display);
+      period.set(displayPeriod);
+      generation.set(displayGeneration);
+      latch.countDown();
+    });
+    if (waitForCompletion) {
+      await(latch);
+    }
+    metrics.recordPublish(System.nanoTime() - start);
+    return true;
+  }
+
+  // Publishes the current generation only if the UI requested it
+  private void publishIfRequested() {
+    if (snapshotRequested.getAndSet(false) && !publish(false)) {
+      snapshotRequested.set(true);
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
     }
   }
 
-  class NextGeneration extends RecursiveAction {
-
-    private final Byte2DArray source;
-    private final Byte2DArray target;
-    private final Environment environment;
-    private final int x0;
-    private final int y0;
-    private final int w;
-    private final int h;
-    private final boolean initialTask;
-
-    NextGeneration() {
-      this(
-          cellCulture.getData(),
-          Byte2DArray.newInstance(cellCulture.getWidth(), cellCulture.getHeight()),
-          Generator.this.environment,
-          0, 0,
-          cellCulture.getWidth(), cellCulture.getHeight(),
-          true
-      );
-      this.environment.setData(source);
-    }
-
-    private NextGeneration(
-        Byte2DArray source,
-        Byte2DArray target,
-        Environment environment,
-        int x0, int y0,
-        int w, int h,
-        boolean initialTask) {
-
-      this.source = source;
-      this.target = target;
-      this.environment = environment.copy();
-      this.x0 = x0;
-      this.y0 = y0;
-      this.w = w;
-      this.h = h;
-      this.initialTask = initialTask;
+  private record Options(boolean freeRunning, boolean hashLife, boolean recordPopulation, boolean stopOnCycle,
+      boolean recordHistory) {
+
+  }
+
+  class FastForward implements Runnable {
+
+    private static final long PROGRESS_INTERVAL = 100_000_000;
+
+    private final Options options;
+    private final int generations;
+
+    FastForward(Options options, int generations) {
+      this.options = options;
+      this.generations = generations;
     }
 
     @Override
-    protected void compute() {
-      int limitFactor = 10_000_000;
-      long realFactor = w * h * environment.getComputationFactor();
-      if (limitFactor < realFactor) {
-        int mw = w / 2;
-        int mh = h / 2;
-        invokeAll(
-            new NextGeneration(source, target, environment, x0, y0, mw, mh, false),
-            new NextGeneration(source, target, environment, x0 + mw, y0, w - mw, mh, false),
-            new NextGeneration(source, target, environment, x0, y0 + mh, mw, h - mh, false),
-            new NextGeneration(source, target, environment, x0 + mw, y0 + mh, w - mw, h - mh, false)
-        );
-
-      } else {
-        for (int x = 0; x < w; x++) {
-          for (int y = 0; y < h; y++) {
-            target.setUnsafe(x + x0, y + y0, (byte) environment.computeNextCellType(x + x0, y + y0));
-          }
+    public void run() {
+      apply(options);
+      boolean stopOnCycle = options.stopOnCycle() && cycleDetector.getPeriod() == 0;
+      int start = simulation.getGeneration();
+      int end = start + generations;
+      long lastProgress = System.nanoTime();
+      while (simulation.getGeneration() < end && getState() == State.FAST_FORWARDING
+          && !(stopOnCycle && cycleDetector.getPeriod() > 0)) {
+        if (options.hashLife()) {
+          // HashLife computes the remaining generations in a few jumps of powers of two
+          int k = 31 - Integer.numberOfLeadingZeros(end - simulation.getGeneration());
+          computeJump(k);
+          afterStep(options, 1 << k);
+        } else {
+          computeStep();
+          afterStep(options, 1);
+        }
+        if (System.nanoTime() - lastProgress >= PROGRESS_INTERVAL) {
+          lastProgress = System.nanoTime();
+          double value = (double) (simulation.getGeneration() - start) / generations;
+          fxExecutor.execute(() -> progress.set(value));
         }
       }
-
-      if (initialTask) {
-        onGenerationFinished();
-      }
+      publish(true);
+      fxExecutor.execute(() -> progress.set(1));
     }
+  }
 
-    private void onGenerationFinished() {
-      CountDownLatch latch = new CountDownLatch(1);
-      Platform.runLater(() -> signalComputationDone(latch));
-      try {
-        latch.await();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        throw new RuntimeException(e);
-      }
+  class PlayLoop implements Runnable {
+
+    private final Options options;
+
+    PlayLoop(Options options) {
+      this.options = options;
     }
 
-    private void signalComputationDone(CountDownLatch latch) {
-      generation.set(generation.get() + 1);
-      cellCulture.setData(target);
-      if (getState() != State.PLAYING) {
-        state.set(State.IDLE);
+    @Override
+    public void run() {
+      apply(options);
+      // A cycle that was already detected before does not stop the loop again
+      boolean stopOnCycle = options.stopOnCycle() && cycleDetector.getPeriod() == 0;
+      while (getState() == State.PLAYING && !(stopOnCycle && cycleDetector.getPeriod() > 0)) {
+        try {
+          long start = System.nanoTime();
+          computeStep();
+          afterStep(options, 1);
+          if (options.freeRunning()) {
+            publishIfRequested();
+          } else {
+            publish(true);
+          }
+
+          double requiredSleep = (Math.abs(getSpeed() * 1_000_000) - System.nanoTime() + start) / 1_000_000;
+          if (requiredSleep >= 1) {
+            Thread.sleep((long) requiredSleep);
+          }
+
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+      }
+      if (options.freeRunning()) {
+        // The last computed generation might not have been requested, so ensure that it is shown
+        publish(true);
       }
-      latch.countDown();
     }
   }
 
@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import java.util.concurrent.ForkJoinPool;
+
+// Rolling statistics of a Generator: the time to compute a generation, the time the computing thread waits for the FX
+// thread when publishing a generation, and the time to render it. The averages and rates refer to the last samples
+public class GeneratorMetrics implements GeneratorMetricsMXBean {
+
+  private static final int WINDOW = 64;
+
+  private final ForkJoinPool pool;
+  private final long cellCount;
+  private final Samples compute;
+  private final Samples publish;
+  private final Samples render;
+  private long generations;
+
+  public GeneratorMetrics(ForkJoinPool pool, long cellCount) {
+    this.pool = pool;
+    this.cellCount = cellCount;
+    this.compute = new Samples();
+    this.publish = new Samples();
+    this.render = new Samples();
+  }
+
+  public synchronized void recordCompute(int generations, long nanos) {
+    this.generations += generations;
+    compute.add(generations, nanos);
+  }
+
+  public synchronized void recordPublish(long nanos) {
+    publish.add(1, nanos);
+  }
+
+  public synchronized void recordRender(long nanos) {
+    render.add(1, nanos);
+  }
+
+  @Override
+  public synchronized long getGenerations() {
+    return generations;
+  }
+
+  // Based on the wall clock time, so this includes the time for publishing and, when playing, for sleeping
+  @Override
+  public synchronized double getGenerationsPerSecond() {
+    return compute.getRate();
+  }
+
+  @Override
+  public synchronized double getCellsPerSecond() {
+    return compute.getRate() * cellCount;
+  }
+
+  @Override
+  public synchronized double getComputeMillis() {
+    return compute.getAverage() / 1_000_000;
+  }
+
+  @Override
+  public synchronized double getPublishMillis() {
+    return publish.getAverage() / 1_000_000;
+  }
+
+  @Override
+  public synchronized double getRenderMillis() {
+    return render.getAverage() / 1_000_000;
+  }
+
+  @Override
+  public int getActiveThreadCount() {
+    return pool.getActiveThreadCount();
+  }
+
+  @Override
+  public long getQueuedTaskCount() {
+    return pool.getQueuedTaskCount();
+  }
+
+  @Override
+  public long getStealCount() {
+    return pool.getStealCount();
+  }
+
+  @Override
+  public synchronized void reset() {
+    generations = 0;
+    compute.clear();
+    publish.clear();
+    render.clear();
+  }
+
+  // Ring buffer of the last samples, each one consisting of a count, a duration, and the time it was recorded
+  private static class Samples {
+
+    private final int[] counts = new int[WINDOW];
+    private final long[] nanos = new long[WINDOW];
+    private final long[] timestamps = new long[WINDOW];
+    private int next;
+    private int size;
+    private long countSum;
+    private long nanosSum;
+
+    void add(int count, long duration) {
+      if (size == WINDOW) {
+        countSum -= counts[next];
+        nanosSum -= nanos[next];
+      } else {
+        size++;
+      }
+      counts[next] = count;
+      nanos[next] = duration;
+      timestamps[next] = System.nanoTime();
+      countSum += count;
+      nanosSum += duration;
+      next = (next + 1) % WINDOW;
+    }
+
+    void clear() {
+      next = 0;
+      size = 0;
+      countSum = 0;
+      nanosSum = 0;
+    }
+
+    // The duration per counted item
+    double getAverage() {
+      return countSum == 0 ? 0 : (double) nanosSum / countSum;
+    }
+
+    // The counted items per second, from the oldest to the latest sample
+    double getRate() {
+      if (size < 2) {
+        return 0;
+      }
+      int oldest = (next - size + WINDOW) % WINDOW;
+      int latest = (next - 1 + WINDOW) % WINDOW;
+      long elapsed = timestamps[latest] - timestamps[oldest];
+      return elapsed <= 0 ? 0 : (countSum - counts[oldest]) * 1e9 / elapsed;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public final class HaloBuffer {
+
+  private final int width;
+  private final int height;
+  private final int halo;
+  private final int stride;
+  private final byte[] cells;
+
+  public HaloBuffer(int width, int height, int halo) {
+    this.width = width;
+    this.height = height;
+    this.halo = halo;
+    this.stride = width + 2 * halo;
+    this.cells = new byte[stride * (height + 2 * halo)];
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getHalo() {
+    return halo;
+  }
+
+  public int getStride() {
+    return stride;
+  }
+
+  public byte[] getCells() {
+    return cells;
+  }
+
+  public int indexOf(int x, int y) {
+    return (y + halo) * stride + x + halo;
+  }
+
+  public void load(Byte2DArray data, boolean wrapAround) {
+    if (data.getWidth() != width || data.getHeight() != height) {
+      throw new IllegalArgumentException("Invalid data size");
+    }
+
+    ByteBuffer buffer = data.toByteBuffer(false);
+    for (int y = 0; y < height; y++) {
+      int rowStart = indexOf(0, y);
+      buffer.get(y * width, cells, rowStart, width);
+      if (wrapAround) {
+        wrapColumns(rowStart);
+      } else {
+        Arrays.fill(cells, rowStart - halo, rowStart, (byte) 0);
+        Arrays.fill(cells, rowStart + width, rowStart + width + halo, (byte) 0);
+      }
+    }
+
+    int haloSize = halo * stride;
+    int bottomStart = indexOf(-halo, height);
+    if (wrapAround) {
+      for (int y = -halo; y < 0; y++) {
+        System.arraycopy(cells, indexOf(-halo, Math.floorMod(y, height)), cells, indexOf(-halo, y), stride);
+      }
+      for (int y = height; y < height + halo; y++) {
+        System.arraycopy(cells, indexOf(-halo, Math.floorMod(y, height)), cells, indexOf(-halo, y), stride);
+      }
+    } else {
+      Arrays.fill(cells, 0, haloSize, (byte) 0);
+      Arrays.fill(cells, bottomStart, bottomStart + haloSize, (byte) 0);
+    }
+  }
+
+  public void store(Byte2DArray target, int x0, int y0, int w, int h) {
+    for (int y = y0; y < y0 + h; y++) {
+      int index = indexOf(x0, y);
+      for (int x = x0; x < x0 + w; x++, index++) {
+        target.setUnsafe(x, y, cells[index]);
+      }
+    }
+  }
+
+  private void wrapColumns(int rowStart) {
+    if (halo <= width) {
+      System.arraycopy(cells, rowStart + width - halo, cells, rowStart - halo, halo);
+      System.arraycopy(cells, rowStart, cells, rowStart + width, halo);
+    } else {
+      for (int x = -halo; x < 0; x++) {
+        cells[rowStart + x] = cells[rowStart + Math.floorMod(x, width)];
+      }
+      for (int x = width; x < width + halo; x++) {
+        cells[rowStart + x] = cells[rowStart + Math.floorMod(x, width)];
+      }
+    }
+  }
+}
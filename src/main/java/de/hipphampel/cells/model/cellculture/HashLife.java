@@ -0,0 +1,400 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// HashLife engine for the same cell systems as BitPackedLife: the universe is a quadtree of canonical nodes, and the
+// center of each node after some generations is memoised in the node, so that repeating structures in space and time
+// are computed only once. The universe is unbounded, there is no wrap around, and cells leaving the area of the cell
+// culture keep on living.
+public final class HashLife {
+
+  public static final int MAX_JUMP = 48;
+  private static final int MAX_NODES = 1 << 22;
+
+  private final LifeRules rules;
+  private final Map<Node, Node> nodes;
+  private final List<Node> emptyNodes;
+  private final Node dead;
+  private final Node alive;
+  private Node root;
+  private long originX;
+  private long originY;
+  private long generation;
+
+  private HashLife(LifeRules rules) {
+    this.rules = rules;
+    this.nodes = new HashMap<>();
+    this.emptyNodes = new ArrayList<>();
+    this.dead = new Node(0);
+    this.alive = new Node(1);
+    this.emptyNodes.add(dead);
+    this.root = emptyNode(2);
+  }
+
+  public static HashLife create(CellSystem cellSystem) {
+    LifeRules rules = LifeRules.of(cellSystem);
+    // A birth without neighbours would fill the infinite universe
+    if (rules == null || (rules.birthMask() & 1) != 0) {
+      return null;
+    }
+    return new HashLife(rules);
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  public long getPopulation() {
+    return root.population;
+  }
+
+  public long getPopulation(long x0, long y0, long width, long height) {
+    return getPopulation(root, originX - x0, originY - y0, width, height);
+  }
+
+  // Expanding the root and computing results keep the center of the root in place, so cropping the root to the
+  // smallest centered node containing the whole population gives the same node for the same pattern
+  public long getStateHash() {
+    Node n = root;
+    while (n.level > 1 && centre(n).population == n.population) {
+      n = centre(n);
+    }
+    return n.contentHash;
+  }
+
+  public void load(Byte2DArray data) {
+    load(data, 0, 0);
+  }
+
+  public void load(Byte2DArray data, long x0, long y0) {
+    nodes.clear();
+    emptyNodes.subList(1, emptyNodes.size()).clear();
+    int level = 2;
+    while ((1L << level) < Math.max(data.getWidth(), data.getHeight())) {
+      level++;
+    }
+    root = build(data, 0, 0, level);
+    originX = x0;
+    originY = y0;
+    generation = 0;
+  }
+
+  public void store(Byte2DArray target) {
+    store(target, 0, 0);
+  }
+
+  public void store(Byte2DArray target, long x0, long y0) {
+    for (int y = 0; y < target.getHeight(); y++) {
+      for (int x = 0; x < target.getWidth(); x++) {
+        target.setUnsafe(x, y, (byte) 0);
+      }
+    }
+    store(root, originX - x0, originY - y0, target);
+  }
+
+  public void step() {
+    advance(1);
+  }
+
+  public void advance(long generations) {
+    if (generations < 0) {
+      throw new IllegalArgumentException("Invalid number of generations");
+    }
+    for (int k = 0; generations >> k != 0; k++) {
+      if ((generations >> k & 1) != 0) {
+        jump(k);
+      }
+    }
+  }
+
+  // Computes 2^k generations at once
+  public void jump(int k) {
+    if (k < 0 || k > MAX_JUMP) {
+      throw new IllegalArgumentException("Invalid jump");
+    }
+    // The pattern needs to stay within the center half of the root, which is the result after the jump
+    while (root.level < k + 3 || centre(centre(root)).population != root.population) {
+      expand();
+    }
+    if (nodes.size() > MAX_NODES) {
+      collect();
+    }
+    long quarter = 1L << (root.level - 2);
+    root = result(root, k);
+    originX += quarter;
+    originY += quarter;
+    generation += 1L << k;
+  }
+
+  private void expand() {
+    Node empty = emptyNode(root.level - 1);
+    root = node(
+        node(empty, empty, empty, root.nw),
+        node(empty, empty, root.ne, empty),
+        node(empty, root.sw, empty, empty),
+        node(root.se, empty, empty, empty));
+    long quarter = 1L << (root.level - 2);
+    originX -= quarter;
+    originY -= quarter;
+  }
+
+  // Returns the center of the node advanced by 2^k generations; k must not exceed level - 2
+  private Node result(Node n, int k) {
+    if (n.result != null && n.resultStep == k) {
+      return n.result;
+    }
+
+    Node result;
+    if (n.population == 0) {
+      result = emptyNode(n.level - 1);
+    } else if (n.level == 2) {
+      result = computeLevel2(n);
+    } else {
+      Node n00 = n.nw;
+      Node n01 = node(n.nw.ne, n.ne.nw, n.nw.se, n.ne.sw);
+      Node n02 = n.ne;
+      Node n10 = node(n.nw.sw, n.nw.se, n.sw.nw, n.sw.ne);
+      Node n11 = centre(n);
+      Node n12 = node(n.ne.sw, n.ne.se, n.se.nw, n.se.ne);
+      Node n20 = n.sw;
+      Node n21 = node(n.sw.ne, n.se.nw, n.sw.se, n.se.sw);
+      Node n22 = n.se;
+      if (k == n.level - 2) {
+        // Full speed: both halves of the time are spent in the recursion
+        int halfStep = k - 1;
+        n00 = result(n00, halfStep);
+        n01 = result(n01, halfStep);
+        n02 = result(n02, halfStep);
+        n10 = result(n10, halfStep);
+        n11 = result(n11, halfStep);
+        n12 = result(n12, halfStep);
+        n20 = result(n20, halfStep);
+        n21 = result(n21, halfStep);
+        n22 = result(n22, halfStep);
+        result = node(
+            result(node(n00, n01, n10, n11), halfStep),
+            result(node(n01, n02, n11, n12), halfStep),
+            result(node(n10, n11, n20, n21), halfStep),
+            result(node(n11, n12, n21, n22), halfStep));
+      } else {
+        // Fewer generations: the first half just takes the centers, the second half computes all of them
+        n00 = centre(n00);
+        n01 = centre(n01);
+        n02 = centre(n02);
+        n10 = centre(n10);
+        n11 = centre(n11);
+        n12 = centre(n12);
+        n20 = centre(n20);
+        n21 = centre(n21);
+        n22 = centre(n22);
+        result = node(
+            result(node(n00, n01, n10, n11), k),
+            result(node(n01, n02, n11, n12), k),
+            result(node(n10, n11, n20, n21), k),
+            result(node(n11, n12, n21, n22), k));
+      }
+    }
+    n.result = result;
+    n.resultStep = k;
+    return result;
+  }
+
+  // Brute force for a 4x4 node, returning the 2x2 center after one generation
+  private Node computeLevel2(Node n) {
+    int bits = 0;
+    for (int y = 0; y < 4; y++) {
+      for (int x = 0; x < 4; x++) {
+        Node quadrant = y < 2 ? (x < 2 ? n.nw : n.ne) : (x < 2 ? n.sw : n.se);
+        Node leaf = (y & 1) == 0 ? ((x & 1) == 0 ? quadrant.nw : quadrant.ne) : ((x & 1) == 0 ? quadrant.sw : quadrant.se);
+        bits |= (int) leaf.population << (y * 4 + x);
+      }
+    }
+
+    Node[] next = new Node[4];
+    for (int y = 1; y <= 2; y++) {
+      for (int x = 1; x <= 2; x++) {
+        int count = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+          for (int dx = -1; dx <= 1; dx++) {
+            if (dx != 0 || dy != 0) {
+              count += bits >>> ((y + dy) * 4 + x + dx) & 1;
+            }
+          }
+        }
+        next[(y - 1) * 2 + x - 1] = rules.nextState(bits >>> (y * 4 + x) & 1, count) == 0 ? dead : alive;
+      }
+    }
+    return node(next[0], next[1], next[2], next[3]);
+  }
+
+  private Node centre(Node n) {
+    return node(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+  }
+
+  private Node build(Byte2DArray data, int x0, int y0, int level) {
+    if (x0 >= data.getWidth() || y0 >= data.getHeight()) {
+      return emptyNode(level);
+    }
+    if (level == 0) {
+      return data.getUnsafe(x0, y0) == 0 ? dead : alive;
+    }
+    int half = 1 << (level - 1);
+    return node(
+        build(data, x0, y0, level - 1),
+        build(data, x0 + half, y0, level - 1),
+        build(data, x0, y0 + half, level - 1),
+        build(data, x0 + half, y0 + half, level - 1));
+  }
+
+  private void store(Node n, long x0, long y0, Byte2DArray target) {
+    long size = 1L << n.level;
+    if (n.population == 0 || x0 >= target.getWidth() || y0 >= target.getHeight() || x0 + size <= 0 || y0 + size <= 0) {
+      return;
+    }
+    if (n.level == 0) {
+      target.setUnsafe((int) x0, (int) y0, (byte) 1);
+      return;
+    }
+    long half = size / 2;
+    store(n.nw, x0, y0, target);
+    store(n.ne, x0 + half, y0, target);
+    store(n.sw, x0, y0 + half, target);
+    store(n.se, x0 + half, y0 + half, target);
+  }
+
+  private long getPopulation(Node n, long x0, long y0, long width, long height) {
+    long size = 1L << n.level;
+    if (n.population == 0 || x0 >= width || y0 >= height || x0 + size <= 0 || y0 + size <= 0) {
+      return 0;
+    }
+    if (x0 >= 0 && y0 >= 0 && x0 + size <= width && y0 + size <= height) {
+      return n.population;
+    }
+    long half = size / 2;
+    return getPopulation(n.nw, x0, y0, width, height)
+        + getPopulation(n.ne, x0 + half, y0, width, height)
+        + getPopulation(n.sw, x0, y0 + half, width, height)
+        + getPopulation(n.se, x0 + half, y0 + half, width, height);
+  }
+
+  private Node emptyNode(int level) {
+    while (emptyNodes.size() <= level) {
+      Node empty = emptyNodes.get(emptyNodes.size() - 1);
+      emptyNodes.add(node(empty, empty, empty, empty));
+    }
+    return emptyNodes.get(level);
+  }
+
+  private Node node(Node nw, Node ne, Node sw, Node se) {
+    Node key = new Node(nw, ne, sw, se);
+    Node existing = nodes.putIfAbsent(key, key);
+    return existing == null ? key : existing;
+  }
+
+  // Drops all nodes that are no longer reachable from the root, together with the memoised results
+  private void collect() {
+    Map<Node, Node> canonical = new IdentityHashMap<>();
+    List<Node> empty = new ArrayList<>(emptyNodes);
+    nodes.clear();
+    emptyNodes.subList(1, emptyNodes.size()).clear();
+    root = recreate(root, canonical);
+    for (Node node : empty) {
+      if (node.level > 0) {
+        recreate(node, canonical);
+      }
+    }
+    for (int level = 1; level < empty.size(); level++) {
+      emptyNodes.add(canonical.get(empty.get(level)));
+    }
+  }
+
+  private Node recreate(Node n, Map<Node, Node> canonical) {
+    if (n.level == 0) {
+      return n;
+    }
+    Node existing = canonical.get(n);
+    if (existing == null) {
+      existing = node(recreate(n.nw, canonical), recreate(n.ne, canonical), recreate(n.sw, canonical),
+          recreate(n.se, canonical));
+      canonical.put(n, existing);
+    }
+    return existing;
+  }
+
+  // Nodes are canonical, so two nodes are equal if their quadrants are the same instances
+  private static final class Node {
+
+    final int level;
+    final Node nw;
+    final Node ne;
+    final Node sw;
+    final Node se;
+    final long population;
+    final int hash;
+    // Unlike the hash, this does not depend on the identity of the quadrants, so it is the same for equal patterns
+    // even after the nodes were recreated
+    final long contentHash;
+    Node result;
+    int resultStep;
+
+    Node(int population) {
+      this.level = 0;
+      this.nw = this.ne = this.sw = this.se = null;
+      this.population = population;
+      this.hash = population;
+      this.contentHash = population;
+    }
+
+    Node(Node nw, Node ne, Node sw, Node se) {
+      this.level = nw.level + 1;
+      this.nw = nw;
+      this.ne = ne;
+      this.sw = sw;
+      this.se = se;
+      this.population = nw.population + ne.population + sw.population + se.population;
+      this.hash = ((System.identityHashCode(nw) * 31 + System.identityHashCode(ne)) * 31
+          + System.identityHashCode(sw)) * 31 + System.identityHashCode(se);
+      this.contentHash = CycleDetector.mix(
+          (((level * 0x9e3779b97f4a7c15L + nw.contentHash) * 0x9e3779b97f4a7c15L + ne.contentHash)
+              * 0x9e3779b97f4a7c15L + sw.contentHash) * 0x9e3779b97f4a7c15L + se.contentHash);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Node n && nw == n.nw && ne == n.ne && sw == n.sw && se == n.se;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
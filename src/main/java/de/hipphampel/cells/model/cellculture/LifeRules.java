@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import de.hipphampel.array2dops.model.Int2DArray;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.model.cellsystem.CellType;
+import de.hipphampel.cells.model.cellsystem.Neighbourhood;
+
+// The rules of a cell system with two cell types and a Moore neighbourhood with weights of one, expressed as bit masks
+// telling for which neighbour counts an empty cell is born and a non-empty cell survives
+record LifeRules(int birthMask, int surviveMask) {
+
+  static LifeRules of(CellSystem cellSystem) {
+    if (cellSystem.getCellTypeCount() != 2) {
+      return null;
+    }
+
+    CompiledRules rules = CompiledRules.compile(cellSystem);
+    for (int i = 0; i < 2; i++) {
+      CellType cellType = cellSystem.getCellType(i);
+      Neighbourhood neighbourhood = cellType.getNeighbourhood() == null ? cellSystem.getNeighbourhood() : cellType.getNeighbourhood();
+      if (rules.hasRules(i) && !isMooreNeighbourhood(neighbourhood)) {
+        return null;
+      }
+    }
+
+    // With two cell types, counter 0 (the weight of the non-empty neighbours) and counter 1 are always the same
+    int birthMask = 0;
+    int surviveMask = 0;
+    int[] counters = new int[2];
+    for (int count = 0; count <= 8; count++) {
+      counters[0] = count;
+      counters[1] = count;
+      int born = rules.computeNextCellType(0, counters);
+      int survived = rules.computeNextCellType(1, counters);
+      if (born > 1 || survived > 1) {
+        return null;
+      }
+      birthMask |= born << count;
+      surviveMask |= survived << count;
+    }
+    return new LifeRules(birthMask, surviveMask);
+  }
+
+  private static boolean isMooreNeighbourhood(Neighbourhood neighbourhood) {
+    Int2DArray weights = neighbourhood.getWeightsArray();
+    int r = neighbourhood.getRadius();
+    for (int y = -r; y <= r; y++) {
+      for (int x = -r; x <= r; x++) {
+        int expected = Math.max(Math.abs(x), Math.abs(y)) == 1 ? 1 : 0;
+        if ((x != 0 || y != 0) && weights.getUnsafe(x + r, y + r) != expected) {
+          return false;
+        }
+      }
+    }
+    return r >= 1;
+  }
+
+  int nextState(int state, int count) {
+    return ((state == 0 ? birthMask : surviveMask) >>> count) & 1;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import java.util.Arrays;
+
+// Ring buffer keeping the number of cells per cell type of the last generations. It is written by the thread computing
+// the generations and read by the FX thread, hence synchronized
+public class PopulationHistory {
+
+  public static final int DEFAULT_CAPACITY = 1000;
+
+  private final int capacity;
+  private final int cellTypeCount;
+  private final int[] generations;
+  private final int[] counts;
+  private int start;
+  private int size;
+
+  public PopulationHistory(int cellTypeCount) {
+    this(cellTypeCount, DEFAULT_CAPACITY);
+  }
+
+  public PopulationHistory(int cellTypeCount, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid capacity");
+    }
+    this.capacity = capacity;
+    this.cellTypeCount = cellTypeCount;
+    this.generations = new int[capacity];
+    this.counts = new int[capacity * cellTypeCount];
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getCellTypeCount() {
+    return cellTypeCount;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public synchronized void clear() {
+    start = 0;
+    size = 0;
+  }
+
+  // Overwrites the oldest entry, if full
+  public synchronized void add(int generation, int[] histogram) {
+    int index = (start + size) % capacity;
+    if (size == capacity) {
+      start = (start + 1) % capacity;
+    } else {
+      size++;
+    }
+    generations[index] = generation;
+    System.arraycopy(histogram, 0, counts, index * cellTypeCount, cellTypeCount);
+  }
+
+  // Entry 0 is the oldest one
+  public synchronized int getGeneration(int entry) {
+    return generations[indexOf(entry)];
+  }
+
+  public synchronized int getCount(int entry, int cellTypeId) {
+    return counts[indexOf(entry) * cellTypeCount + cellTypeId];
+  }
+
+  public synchronized int[] getCounts(int entry) {
+    int index = indexOf(entry) * cellTypeCount;
+    return Arrays.copyOfRange(counts, index, index + cellTypeCount);
+  }
+
+  // Returns the largest count of the given cell type, 0 if empty
+  public synchronized int getMaxCount(int cellTypeId) {
+    int max = 0;
+    for (int entry = 0; entry < size; entry++) {
+      max = Math.max(max, counts[indexOf(entry) * cellTypeCount + cellTypeId]);
+    }
+    return max;
+  }
+
+  private int indexOf(int entry) {
+    if (entry < 0 || entry >= size) {
+      throw new IndexOutOfBoundsException(entry);
+    }
+    return (start + entry) % capacity;
+  }
+}
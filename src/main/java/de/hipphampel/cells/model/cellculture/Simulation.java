@@ -0,0 +1,529 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.monitoring.GenerationEvent;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Simulation {
+
+  private static final int STRIPS_PER_WORKER = 4;
+  private static final long MIN_STRIP_WORK = 200_000;
+  private static final int MAX_STRIP_BYTES = 1 << 20;
+
+  private final ForkJoinPool pool;
+  private final int parallelism;
+  private final int width;
+  private final int height;
+  private final boolean wrapAround;
+  private final Environment environment;
+  private final ThreadLocal<Environment> workerEnvironments;
+  private final int stripHeight;
+  private final int stripCount;
+  private final AtomicInteger nextStrip;
+  private final HaloBuffer haloBuffer;
+  private final ActivityMap activityMap;
+  private final Byte2DArray[] buffers;
+  private final BitPackedLife bitPackedLife;
+  private final HashLife hashLife;
+  private boolean hashLifeEnabled;
+  private final int[] histogram;
+  private int[][][] tileHistograms;
+  private boolean histogramEnabled;
+  private boolean histogramValid;
+  private boolean tileHistogramsValid;
+  private long[] tileHashes;
+  private boolean stateHashEnabled;
+  private boolean tileHashesValid;
+  private boolean rehashTiles;
+  private Byte2DArray current;
+  private boolean currentOutdated;
+  private Byte2DArray lastSource;
+  private Byte2DArray lastTarget;
+  private boolean copyInactiveTiles;
+  private Byte2DArray nextTarget;
+  private ByteBuffer nextTargetBuffer;
+  private final NextGeneration nextGeneration;
+  private final GenerationEvent event;
+  private int generation;
+
+  public Simulation(CellSystem cellSystem, CellCulture cellCulture) {
+    this(cellSystem, cellCulture, ForkJoinPool.commonPool());
+  }
+
+  public Simulation(CellSystem cellSystem, CellCulture cellCulture, ForkJoinPool pool) {
+    this(cellSystem, cellCulture, pool, pool.getParallelism());
+  }
+
+  // The parallelism limits the number of threads of the pool computing a generation at a time, so that a pool can be
+  // shared by several simulations
+  public Simulation(CellSystem cellSystem, CellCulture cellCulture, ForkJoinPool pool, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+    }
+    this.pool = pool;
+    this.parallelism = Math.min(parallelism, pool.getParallelism());
+    this.width = cellCulture.getWidth();
+    this.height = cellCulture.getHeight();
+    this.wrapAround = cellCulture.isWrapAround();
+    this.environment = new Environment(cellSystem, cellCulture);
+    this.workerEnvironments = ThreadLocal.withInitial(environment::copy);
+    this.haloBuffer = new HaloBuffer(width, height, environment.getMaxRadius());
+    this.activityMap = new ActivityMap(width, height, environment.getMaxRadius(), wrapAround);
+    this.stripHeight = computeStripHeight();
+    this.stripCount = (height + stripHeight - 1) / stripHeight;
+    this.nextStrip = new AtomicInteger();
+    this.buffers = new Byte2DArray[]{
+        Byte2DArray.newInstance(width, height),
+        Byte2DArray.newInstance(width, height)
+    };
+    this.bitPackedLife = BitPackedLife.create(cellSystem, width, height, wrapAround, this.parallelism);
+    this.hashLife = wrapAround ? null : HashLife.create(cellSystem);
+    this.histogram = new int[cellSystem.getCellTypeCount()];
+    // The task tree and the event are reused for each generation
+    this.nextGeneration = new NextGeneration();
+    this.event = new GenerationEvent();
+    reset(cellCulture.getData());
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getGeneration() {
+    return generation;
+  }
+
+  public boolean isHashLifeSupported() {
+    return hashLife != null;
+  }
+
+  public boolean isHashLifeEnabled() {
+    return hashLifeEnabled;
+  }
+
+  // HashLife computes an unbounded universe, so cells are not stopped by the border of the cell culture. When turning
+  // it off again, only the cells inside the cell culture survive
+  public void setHashLifeEnabled(boolean enabled) {
+    if (enabled == hashLifeEnabled) {
+      return;
+    }
+    if (enabled && hashLife == null) {
+      throw new IllegalStateException("HashLife not supported for this cell system");
+    }
+    Byte2DArray data = getData();
+    hashLifeEnabled = enabled;
+    histogramValid = false;
+    tileHistogramsValid = false;
+    tileHashesValid = false;
+    if (enabled) {
+      hashLife.load(data);
+    } else {
+      activityMap.markAllActive();
+      if (bitPackedLife != null) {
+        bitPackedLife.load(data);
+      }
+    }
+  }
+
+  public boolean isHistogramEnabled() {
+    return histogramEnabled;
+  }
+
+  // If enabled, the number of cells per cell type is counted while computing a generation, per tile of the activity
+  // map, so that the counts of inactive tiles are taken over from the previous generation
+  public void setHistogramEnabled(boolean enabled) {
+    histogramEnabled = enabled;
+  }
+
+  // Returns the number of cells per cell type of the current generation
+  public int[] getHistogram() {
+    if (!histogramValid) {
+      Arrays.fill(histogram, 0);
+      if (hashLifeEnabled) {
+        setPopulation(hashLife.getPopulation(0, 0, width, height));
+      } else if (bitPackedLife != null) {
+        setPopulation(bitPackedLife.getPopulation());
+      } else {
+        ByteBuffer buffer = current.toByteBuffer(false);
+        for (int i = 0; i < width * height; i++) {
+          histogram[buffer.get(i) & 0xff]++;
+        }
+      }
+      histogramValid = true;
+    }
+    return histogram.clone();
+  }
+
+  private void setPopulation(long population) {
+    histogram[0] = (int) ((long) width * height - population);
+    histogram[1] = (int) population;
+  }
+
+  public boolean isStateHashEnabled() {
+    return stateHashEnabled;
+  }
+
+  // If enabled, the hashes of the tiles of the activity map are updated while computing a generation, as far as they
+  // changed. This has no effect if a specialized engine is used, since these compute their hashes anyway
+  public void setStateHashEnabled(boolean enabled) {
+    stateHashEnabled = enabled;
+  }
+
+  // Returns a hash of the current generation. The hashes are comparable only as long as neither the HashLife mode
+  // is changed nor the simulation is reset
+  public long getStateHash() {
+    if (hashLifeEnabled) {
+      return hashLife.getStateHash();
+    } else if (bitPackedLife != null) {
+      return bitPackedLife.getStateHash();
+    }
+    if (!tileHashesValid) {
+      if (tileHashes == null) {
+        tileHashes = new long[activityMap.getTilesX() * activityMap.getTilesY()];
+      }
+      ByteBuffer buffer = current.toByteBuffer(false);
+      for (int tileY = 0; tileY < activityMap.getTilesY(); tileY++) {
+        for (int tileX = 0; tileX < activityMap.getTilesX(); tileX++) {
+          tileHashes[tileX + tileY * activityMap.getTilesX()] = hashTile(buffer, tileX, tileY);
+        }
+      }
+      tileHashesValid = true;
+    }
+    long hash = 0;
+    for (long tileHash : tileHashes) {
+      hash += tileHash;
+    }
+    return hash;
+  }
+
+  private long hashTile(ByteBuffer buffer, int tileX, int tileY) {
+    int tileSize = activityMap.getTileSize();
+    int tx0 = tileX * tileSize;
+    int tw = Math.min(width, tx0 + tileSize) - tx0;
+    long hash = tileX + (long) tileY * activityMap.getTilesX();
+    for (int y = tileY * tileSize; y < Math.min(height, (tileY + 1) * tileSize); y++) {
+      int index = y * width + tx0;
+      int end = index + tw;
+      for (; index + Long.BYTES <= end; index += Long.BYTES) {
+        hash = (hash + buffer.getLong(index)) * 0x9e3779b97f4a7c15L;
+      }
+      for (; index < end; index++) {
+        hash = (hash + buffer.get(index)) * 0x9e3779b97f4a7c15L;
+      }
+    }
+    return CycleDetector.mix(hash);
+  }
+
+  public Byte2DArray getData() {
+    if (currentOutdated) {
+      Byte2DArray target = buffers[0] == current ? buffers[1] : buffers[0];
+      storeOutdated(target);
+      current = target;
+      currentOutdated = false;
+    }
+    return current;
+  }
+
+  public void copyData(Byte2DArray target) {
+    if (target.getWidth() != width || target.getHeight() != height) {
+      throw new IllegalArgumentException("Invalid data size");
+    }
+    if (currentOutdated) {
+      storeOutdated(target);
+    } else {
+      current.toByteBuffer(false).get(0, target.getData());
+    }
+  }
+
+  public void reset(Byte2DArray data) {
+    reset(data, 0);
+  }
+
+  // Continues with the given data as the given generation, e.g. when going back in time
+  public void reset(Byte2DArray data, int generation) {
+    if (data.getWidth() != width || data.getHeight() != height) {
+      throw new IllegalArgumentException("Invalid data size");
+    }
+    if (generation < 0) {
+      throw new IllegalArgumentException("Invalid generation");
+    }
+    current = data;
+    currentOutdated = false;
+    histogramValid = false;
+    tileHistogramsValid = false;
+    tileHashesValid = false;
+    this.generation = generation;
+    activityMap.markAllActive();
+    if (hashLifeEnabled) {
+      hashLife.load(data);
+    } else if (bitPackedLife != null) {
+      bitPackedLife.load(data);
+    }
+  }
+
+  public void step() {
+    event.begin();
+    computeNextGeneration();
+    commitEvent(1);
+  }
+
+  private void computeNextGeneration() {
+    if (hashLifeEnabled) {
+      hashLife.step();
+      currentOutdated = true;
+      histogramValid = false;
+      generation++;
+      return;
+    }
+    if (bitPackedLife != null) {
+      bitPackedLife.step(pool);
+      currentOutdated = true;
+      histogramValid = false;
+      generation++;
+      return;
+    }
+
+    Byte2DArray target = buffers[0] == current ? buffers[1] : buffers[0];
+    haloBuffer.load(current, wrapAround);
+    // The target still holds the generation before the current one, unless the data was replaced meanwhile;
+    // in the latter case the tiles not being computed must be copied over
+    copyInactiveTiles = target != lastSource || current != lastTarget;
+    lastSource = current;
+    lastTarget = target;
+    if (!histogramEnabled) {
+      tileHistogramsValid = false;
+    } else if (!tileHistogramsValid) {
+      // The counts of all tiles are required once
+      if (tileHistograms == null) {
+        tileHistograms = new int[activityMap.getTilesY()][activityMap.getTilesX()][histogram.length];
+      }
+      activityMap.markAllActive();
+      tileHistogramsValid = true;
+    }
+    // Unless the hashes of all tiles are known, all tiles are computed and hashed once
+    rehashTiles = stateHashEnabled && !tileHashesValid;
+    if (!stateHashEnabled) {
+      tileHashesValid = false;
+    } else if (rehashTiles) {
+      if (tileHashes == null) {
+        tileHashes = new long[activityMap.getTilesX() * activityMap.getTilesY()];
+      }
+      activityMap.markAllActive();
+      tileHashesValid = true;
+    }
+
+    nextTarget = target;
+    nextTargetBuffer = stateHashEnabled ? target.toByteBuffer(false) : null;
+    nextStrip.set(0);
+    nextGeneration.reinitialize();
+    pool.invoke(nextGeneration);
+
+    activityMap.advance();
+    current = target;
+    generation++;
+    histogramValid = histogramEnabled;
+    if (histogramEnabled) {
+      Arrays.fill(histogram, 0);
+      for (int[][] rowHistograms : tileHistograms) {
+        for (int[] tileHistogram : rowHistograms) {
+          for (int i = 0; i < histogram.length; i++) {
+            histogram[i] += tileHistogram[i];
+          }
+        }
+      }
+    }
+  }
+
+  public void step(int generations) {
+    if (hashLifeEnabled) {
+      checkGenerations(generations);
+      event.begin();
+      hashLife.advance(generations);
+      commitEvent(generations);
+      currentOutdated = true;
+      histogramValid = false;
+      generation += generations;
+      return;
+    }
+    for (int i = 0; i < generations; i++) {
+      step();
+    }
+  }
+
+  // Computes 2^k generations; this is only fast if HashLife is enabled
+  public void jump(int k) {
+    if (k < 0 || k > 30) {
+      throw new IllegalArgumentException("Invalid jump");
+    }
+    if (hashLifeEnabled) {
+      checkGenerations(1 << k);
+      event.begin();
+      hashLife.jump(k);
+      commitEvent(1 << k);
+      currentOutdated = true;
+      histogramValid = false;
+      generation += 1 << k;
+    } else {
+      step(1 << k);
+    }
+  }
+
+  private void commitEvent(int generations) {
+    event.end();
+    if (!event.shouldCommit()) {
+      return;
+    }
+    event.width = width;
+    event.height = height;
+    event.radius = environment.getMaxRadius();
+    event.generations = generations;
+    if (hashLifeEnabled) {
+      event.engine = "hashlife";
+      event.tasks = 1;
+    } else if (bitPackedLife != null) {
+      event.engine = "bitpacked";
+      event.tasks = bitPackedLife.getTaskCount();
+    } else {
+      event.engine = "default";
+      event.tasks = stripCount;
+    }
+    event.commit();
+  }
+
+  private void checkGenerations(int generations) {
+    if (generations < 0 || (long) generation + generations > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid number of generations");
+    }
+  }
+
+  // The culture is split into strips of complete rows, so that each worker streams linearly through the memory. There
+  // are some strips per worker to balance the load by work stealing, but not so many that the overhead dominates and
+  // not so large that the rows of a strip do not fit into the cache. Strips are aligned to the tiles of the activity map
+  private int computeStripHeight() {
+    int tileSize = activityMap.getTileSize();
+    int rows = (height + parallelism * STRIPS_PER_WORKER - 1) / (parallelism * STRIPS_PER_WORKER);
+    rows = Math.min(rows, MAX_STRIP_BYTES / (2 * haloBuffer.getStride()));
+    rows = (int) Math.max(rows, MIN_STRIP_WORK / Math.max(1, width * environment.getComputationFactor()));
+    rows = (rows + tileSize - 1) / tileSize * tileSize;
+    return Math.max(tileSize, Math.min(rows, (height + tileSize - 1) / tileSize * tileSize));
+  }
+
+  private void storeOutdated(Byte2DArray target) {
+    if (hashLifeEnabled) {
+      hashLife.store(target);
+    } else {
+      bitPackedLife.store(target);
+    }
+  }
+
+  // The leaves of the tree take the strips one by one until all are computed, so at most one thread per leaf works on
+  // a generation at a time, whereas the load is still balanced
+  class NextGeneration extends RecursiveAction {
+
+    private final NextGeneration upper;
+    private final NextGeneration lower;
+    private final boolean[] changed;
+
+    NextGeneration() {
+      this(Math.min(parallelism, stripCount));
+    }
+
+    private NextGeneration(int leaves) {
+      if (leaves > 1) {
+        this.upper = new NextGeneration(leaves / 2);
+        this.lower = new NextGeneration(leaves - leaves / 2);
+        this.changed = null;
+      } else {
+        this.upper = null;
+        this.lower = null;
+        this.changed = new boolean[activityMap.getTilesX()];
+      }
+    }
+
+    @Override
+    protected void compute() {
+      if (upper != null) {
+        // The subtasks completed in the previous generation, so they need to be reset before running them again
+        upper.reinitialize();
+        lower.reinitialize();
+        invokeAll(upper, lower);
+      } else {
+        Environment environment = workerEnvironments.get();
+        for (int strip = nextStrip.getAndIncrement(); strip < stripCount; strip = nextStrip.getAndIncrement()) {
+          int y0 = strip * stripHeight;
+          computeStrip(environment, y0, Math.min(height, y0 + stripHeight));
+        }
+      }
+    }
+
+    private void computeStrip(Environment environment, int y0, int y1) {
+      int tileSize = activityMap.getTileSize();
+      Byte2DArray target = nextTarget;
+      for (int tileY = y0 / tileSize; tileY * tileSize < y1; tileY++) {
+        int ty0 = tileY * tileSize;
+        int th = Math.min(y1, ty0 + tileSize) - ty0;
+        int[][] histograms = histogramEnabled ? tileHistograms[tileY] : null;
+        Arrays.fill(changed, false);
+        // Adjacent tiles that are all active or all inactive are handled at once, so that the environment is counted
+        // over complete rows if all tiles are active
+        for (int firstTileX = 0, endTileX; firstTileX < changed.length; firstTileX = endTileX) {
+          boolean active = activityMap.isActive(firstTileX, tileY);
+          endTileX = firstTileX + 1;
+          while (endTileX < changed.length && activityMap.isActive(endTileX, tileY) == active) {
+            endTileX++;
+          }
+          int tx0 = firstTileX * tileSize;
+          int tw = Math.min(width, endTileX * tileSize) - tx0;
+          if (active) {
+            for (int tileX = firstTileX; histograms != null && tileX < endTileX; tileX++) {
+              Arrays.fill(histograms[tileX], 0);
+            }
+            environment.computeTiles(haloBuffer, target, tx0, ty0, tw, th, tileSize, changed, histograms);
+          } else if (copyInactiveTiles) {
+            haloBuffer.store(target, tx0, ty0, tw, th);
+          }
+        }
+        for (int tileX = 0; tileX < changed.length; tileX++) {
+          if (changed[tileX]) {
+            activityMap.markChanged(tileX, tileY);
+          }
+          if (stateHashEnabled && (changed[tileX] || rehashTiles)) {
+            tileHashes[tileX + tileY * changed.length] = hashTile(nextTargetBuffer, tileX, tileY);
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+// Configures the threads computing the generations: the parallelism of a pool, whether all generators share one pool
+// or each one gets its own, the priority of the threads, and how many threads of a shared pool a single generator may
+// use at a time
+public record SimulationPoolConfig(int parallelism, boolean shared, int threadPriority, int generatorParallelism) {
+
+  public static final String PARALLELISM_PROPERTY = "cells.simulation.parallelism";
+  public static final String SHARED_PROPERTY = "cells.simulation.sharedPool";
+  public static final String THREAD_PRIORITY_PROPERTY = "cells.simulation.threadPriority";
+  public static final String GENERATOR_PARALLELISM_PROPERTY = "cells.simulation.generatorParallelism";
+
+  public SimulationPoolConfig {
+    if (parallelism < 1 || parallelism > 32767) {
+      throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+    }
+    if (threadPriority < Thread.MIN_PRIORITY || threadPriority > Thread.MAX_PRIORITY) {
+      throw new IllegalArgumentException("Invalid thread priority " + threadPriority);
+    }
+    if (generatorParallelism < 1 || generatorParallelism > parallelism) {
+      throw new IllegalArgumentException("Invalid generator parallelism " + generatorParallelism);
+    }
+  }
+
+  public SimulationPoolConfig(int parallelism, boolean shared, int threadPriority) {
+    this(parallelism, shared, threadPriority, parallelism);
+  }
+
+  public static SimulationPoolConfig fromSystemProperties() {
+    int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors());
+    return new SimulationPoolConfig(
+        parallelism,
+        Boolean.parseBoolean(System.getProperty(SHARED_PROPERTY, "true")),
+        Integer.getInteger(THREAD_PRIORITY_PROPERTY, Thread.NORM_PRIORITY),
+        Integer.getInteger(GENERATOR_PARALLELISM_PROPERTY, parallelism));
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hands out the pools for computing the generations according to the SimulationPoolConfig. Pools are either shared
+// by all generators or created per generator; the latter are shut down when released
+public class SimulationPools {
+
+  private final SimulationPoolConfig config;
+  private final AtomicInteger threadCount;
+  private ForkJoinPool sharedPool;
+
+  public SimulationPools(SimulationPoolConfig config) {
+    this.config = config;
+    this.threadCount = new AtomicInteger();
+  }
+
+  public SimulationPoolConfig getConfig() {
+    return config;
+  }
+
+  public synchronized ForkJoinPool acquire() {
+    if (!config.shared()) {
+      return newPool();
+    }
+    if (sharedPool == null) {
+      sharedPool = newPool();
+    }
+    return sharedPool;
+  }
+
+  // The number of threads of an acquired pool a single generator may use at a time; only pools being shared can be
+  // limited below their parallelism
+  public int getGeneratorParallelism() {
+    return config.shared() ? config.generatorParallelism() : config.parallelism();
+  }
+
+  public synchronized void release(ForkJoinPool pool) {
+    if (pool != sharedPool) {
+      pool.shutdown();
+    }
+  }
+
+  // For tasks that block, like waiting for the FX thread, which must not occupy a worker of the pool
+  public ExecutorService newControlExecutor() {
+    return Executors.newSingleThreadExecutor(newThreadFactory("cells-control-"));
+  }
+
+  private ForkJoinPool newPool() {
+    return new ForkJoinPool(config.parallelism(), pool -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("cells-simulation-" + threadCount.incrementAndGet());
+      thread.setPriority(config.threadPriority());
+      return thread;
+    }, null, false);
+  }
+
+  private ThreadFactory newThreadFactory(String prefix) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(config.threadPriority());
+      return thread;
+    };
+  }
+}
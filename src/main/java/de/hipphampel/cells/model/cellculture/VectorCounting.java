@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// Counts the weighted neighbours per cell type for a whole row segment at once using the Vector API: the cells of
+// the segment at the same neighbour offset are compared in one vector, and the weight is added to the lanes with a
+// match. Must only be loaded if the module jdk.incubator.vector is present, see Environment
+final class VectorCounting implements RowCounting {
+
+  private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class,
+      VectorShape.forBitSize(SHORTS.vectorBitSize() / 2));
+  private static final int MIN_LANES = 8;
+
+  private final int[] offsets;
+  private final short[] weights;
+  private final int maxLength;
+  // Counts per cell type, index 0 holds the weight of all non-empty cells
+  private final short[][] counts;
+
+  private VectorCounting(int[] offsets, short[] weights, int cellTypeCount, int maxLength) {
+    this.offsets = offsets;
+    this.weights = weights;
+    this.maxLength = maxLength;
+    this.counts = new short[cellTypeCount][maxLength];
+  }
+
+  static VectorCounting create(int[] offsets, int[] weights, int cellTypeCount, int maxLength) {
+    if (SHORTS.length() < MIN_LANES || SHORTS.length() != BYTES.length()) {
+      return null;
+    }
+    short[] shortWeights = new short[weights.length];
+    int total = 0;
+    for (int i = 0; i < weights.length; i++) {
+      total += Math.abs(weights[i]);
+      shortWeights[i] = (short) weights[i];
+    }
+    if (total > Short.MAX_VALUE) {
+      return null;
+    }
+    return new VectorCounting(offsets, shortWeights, cellTypeCount, maxLength);
+  }
+
+  @Override
+  public double getCost() {
+    return (double) offsets.length * Math.max(1, counts.length - 1) / SHORTS.length();
+  }
+
+  @Override
+  public VectorCounting copy() {
+    return new VectorCounting(offsets, weights, counts.length, maxLength);
+  }
+
+  @Override
+  public void count(byte[] cells, int index, int length, boolean continued) {
+    int upper = BYTES.loopBound(length);
+    int i = 0;
+    for (; i < upper; i += BYTES.length()) {
+      if (counts.length == 2) {
+        countNonEmpty(cells, index + i).intoArray(counts[0], i);
+        continue;
+      }
+      ShortVector total = ShortVector.zero(SHORTS);
+      for (int t = 1; t < counts.length; t++) {
+        ShortVector count = countCellType(cells, index + i, (byte) t);
+        count.intoArray(counts[t], i);
+        total = total.add(count);
+      }
+      total.intoArray(counts[0], i);
+    }
+
+    for (; i < length; i++) {
+      for (short[] count : counts) {
+        count[i] = 0;
+      }
+      for (int k = 0; k < offsets.length; k++) {
+        int cellTypeId = cells[index + i + offsets[k]] & 0xff;
+        if (cellTypeId != 0) {
+          counts[0][i] += weights[k];
+          if (counts.length > 2) {
+            counts[cellTypeId][i] += weights[k];
+          }
+        }
+      }
+    }
+  }
+
+  // The cells are widened to shorts before comparing them, since casting a byte mask to a short mask is slow. The
+  // operators are constants, otherwise the JIT does not compile them to vector instructions
+  private ShortVector countNonEmpty(byte[] cells, int index) {
+    ShortVector count = ShortVector.zero(SHORTS);
+    for (int k = 0; k < offsets.length; k++) {
+      count = count.add(weights[k], neighbours(cells, index + offsets[k]).compare(VectorOperators.NE, (short) 0));
+    }
+    return count;
+  }
+
+  // Cells are sign extended when widened, so the cell type id is as well
+  private ShortVector countCellType(byte[] cells, int index, byte cellTypeId) {
+    ShortVector count = ShortVector.zero(SHORTS);
+    for (int k = 0; k < offsets.length; k++) {
+      count = count.add(weights[k], neighbours(cells, index + offsets[k]).compare(VectorOperators.EQ, cellTypeId));
+    }
+    return count;
+  }
+
+  private static ShortVector neighbours(byte[] cells, int index) {
+    return (ShortVector) ByteVector.fromArray(BYTES, cells, index).convertShape(VectorOperators.B2S, SHORTS, 0);
+  }
+
+  // With two cell types, the counter of cell type 1 is the same as counter 0
+  @Override
+  public void getCounters(int position, int[] counters) {
+    counters[0] = counts[0][position];
+    if (counts.length == 2) {
+      counters[1] = counters[0];
+    } else {
+      for (int t = 1; t < counts.length; t++) {
+        counters[t] = counts[t][position];
+      }
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("de.hipphampel.cells.Render")
+@Label("Render")
+@Category({"Cells", "Rendering"})
+@Description("Drawing the visible part of a cell culture")
+public class RenderEvent extends jdk.jfr.Event {
+
+  @Label("Width")
+  @Description("The width of the canvas in pixels")
+  public int width;
+
+  @Label("Height")
+  @Description("The height of the canvas in pixels")
+  public int height;
+
+  @Label("Scale")
+  public int scale;
+
+  @Label("Zoom Out")
+  @Description("The zoom out level, each pixel shows 2^n x 2^n cells")
+  public int zoomOut;
+
+  @Label("Cells")
+  @Description("The number of cells drawn")
+  public long cells;
+
+  @Label("Grid")
+  public boolean grid;
+}
@@ -31,6 +31,7 @@ import de.hipphampel.cells.model.cellculture.CellCulture;
 import de.hipphampel.cells.model.cellculture.CellCultureDimensions;
 import de.hipphampel.cells.model.event.Action;
 import de.hipphampel.cells.model.event.CellCultureEvent;
+import de.hipphampel.cells.monitoring.CellCultureDataEvent;
 import de.hipphampel.cells.persistence.entity.CellCultureInfoEntity;
 import de.hipphampel.cells.persistence.entity.EntityMapper;
 import java.io.FileOutputStream;
@@ -135,9 +136,12 @@ public class CellCultureRepository {
 
     Path dataPath = getDataPath(cellCulture.getId());
 
+    CellCultureDataEvent event = new CellCultureDataEvent();
+    event.begin();
     try {
       byte[] data = Files.readAllBytes(dataPath);
       cellCulture.setData(Byte2DArray.newInstance(data, cellCulture.getWidth(), cellCulture.getHeight()));
+      commit(event, "load", cellCulture.getId(), data.length);
     } catch (IOException ioe) {
       throw new PersistenceException("Failed to store cell culture '" + cellCulture.getId() + "'", ioe);
     }
@@ -203,12 +207,15 @@ public class CellCultureRepository {
     String id = cellCulture.getId();
     lazyLoadCultureData(cellCulture);
 
+    CellCultureDataEvent event = new CellCultureDataEvent();
+    event.begin();
     try {
       Path infoPath = getInfoPath(id);
       Path dataPath = getDataPath(id);
 
+      long bytes;
       try (FileOutputStream file = new FileOutputStream(dataPath.toFile())) {
-        file.getChannel().write(cellCulture.getData().toByteBuffer(false));
+        bytes = file.getChannel().write(cellCulture.getData().toByteBuffer(false));
       }
       String dataChecksum = generateDataChecksum(cellCulture);
       objectMapper.writeValue(infoPath.toFile(), EntityMapper.toCellCultureInfoEntity(cellCulture, dataChecksum));
@@ -217,12 +224,22 @@ public class CellCultureRepository {
       cellCulture.setModificationState(ModificationState.UNCHANGED);
 
       ServiceLocator.getEventPublisher().publish(this, new CellCultureEvent(id, Action.Save));
+      commit(event, "save", id, bytes);
 
     } catch (IOException ioe) {
       throw new PersistenceException("Failed to store cell cellculture '" + id + "'", ioe);
     }
   }
 
+  private static void commit(CellCultureDataEvent event, String operation, String id, long bytes) {
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.cellCulture = id;
+      event.bytes = bytes;
+      event.commit();
+    }
+  }
+
   public ModificationState getCellCultureState(CellCulture cellCulture) {
     ensureCellCultureInfosLoaded();
     String id = cellCulture.getId();
@@ -31,6 +31,7 @@ import de.hipphampel.cells.model.cellculture.CellCulture;
 import de.hipphampel.cells.model.cellculture.ResolvedCellCulture;
 import de.hipphampel.cells.model.cellsystem.CellSystem;
 import de.hipphampel.cells.model.cellsystem.CellType;
+import de.hipphampel.cells.monitoring.RenderEvent;
 import de.hipphampel.cells.resources.Resources;
 import de.hipphampel.cells.ui.cellculture.drawing.CellDrawing;
 import de.hipphampel.cells.ui.clipboard.CellCultureDataSelection;
@@ -46,6 +47,8 @@ import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
 import javafx.event.EventType;
 import javafx.geometry.Orientation;
 import javafx.geometry.Rectangle2D;
@@ -64,16 +67,20 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.RowConstraints;
 import javafx.scene.paint.Color;
+import javafx.scene.paint.ImagePattern;
 import javafx.stage.Popup;
 import javafx.util.Duration;
+import javafx.util.StringConverter;
 
 public class CellCultureDataRenderer extends GridPane {
 
+  public static final int MAX_ZOOM_OUT = 4;
   private static final int MIN_GRID_SCALE = 4;
   private static final int SCROLLER_SIZE = 16;
 
   private ResolvedCellCulture cellCulture;
   private final ObjectProperty<Integer> scale;
+  private final ObjectProperty<Integer> zoomOut;
   private final BooleanProperty showGrid;
   private final BooleanProperty enableSelection;
   private final ObjectProperty<Color> gridColor;
@@ -84,10 +91,13 @@ public class CellCultureDataRenderer extends GridPane {
   private final ScrollBar hScrollbar;
   private final DataCanvas canvas;
   private boolean resizing;
+  private final ChangeListener<Byte2DArray> dataListener = (ov, oldData, newData) -> onDataChanged();
+  private final WeakChangeListener<Byte2DArray> weakDataListener = new WeakChangeListener<>(dataListener);
 
   public CellCultureDataRenderer() {
     this.cellCulture = null;
     this.scale = new SimpleObjectProperty<>(this, "scale", 1);
+    this.zoomOut = new SimpleObjectProperty<>(this, "zoomOut", 0);
     this.showGrid = new SimpleBooleanProperty(this, "showGrid", true);
     this.enableSelection = new SimpleBooleanProperty(this, "enableSelection", false);
     this.cellDrawing = null;
@@ -127,6 +137,7 @@ public class CellCultureDataRenderer extends GridPane {
     widthProperty().addListener(ov -> onResize());
     heightProperty().addListener(ov -> onResize());
     scaleProperty().addListener(ov -> onResize());
+    zoomOutProperty().addListener(ov -> onResize());
     showGridProperty().addListener(ov -> onResize());
     gridColorProperty().addListener(ov -> canvas.draw());
     hScrollbar.valueProperty().addListener(ov -> canvas.draw());
@@ -148,6 +159,21 @@ public class CellCultureDataRenderer extends GridPane {
     }
   }
 
+  // The zoom out level n shows 2^n x 2^n cells per pixel, the scale is ignored then
+  public int getZoomOut() {
+    return zoomOut.get();
+  }
+
+  public ObjectProperty<Integer> zoomOutProperty() {
+    return zoomOut;
+  }
+
+  public void setZoomOut(int zoomOut) {
+    if (zoomOut >= 0 && zoomOut <= MAX_ZOOM_OUT) {
+      this.zoomOut.set(zoomOut);
+    }
+  }
+
   public boolean isEnableSelection() {
     return enableSelection.get();
   }
@@ -202,7 +228,19 @@ public class CellCultureDataRenderer extends GridPane {
     boolean resize = (cellCulture == null) != (this.cellCulture == null) ||
         (cellCulture != null && (cellCulture.culture().getWidth() != this.cellCulture.culture().getWidth()
             || cellCulture.culture().getHeight() != this.cellCulture.culture().getHeight()));
+    CellCulture oldCulture = this.cellCulture == null ? null : this.cellCulture.culture();
+    CellCulture newCulture = cellCulture == null ? null : cellCulture.culture();
+    if (oldCulture != newCulture) {
+      if (oldCulture != null) {
+        oldCulture.dataProperty().removeListener(weakDataListener);
+      }
+      if (newCulture != null) {
+        newCulture.dataProperty().addListener(weakDataListener);
+      }
+    }
     this.cellCulture = cellCulture;
+    // The data might have been modified in place
+    this.canvas.levelOfDetail.invalidate();
     if (resize) {
       onResize();
     } else {
@@ -213,11 +251,15 @@ public class CellCultureDataRenderer extends GridPane {
   public Point toCellCoordinates(double x, double y) {
     Rectangle2D pixelRect = canvas.getPixelRect();
     return new Point(
-        Math.min(cellCulture.culture().getWidth() - 1, Math.max(0, (int) Math.floor((x + pixelRect.getMinX()) / getScale()))),
-        Math.min(cellCulture.culture().getHeight() - 1, Math.max(0, (int) Math.floor((y + pixelRect.getMinY()) / getScale()))));
+        Math.min(cellCulture.culture().getWidth() - 1, Math.max(0, (int) Math.floor((x + pixelRect.getMinX()) / getCellSize()))),
+        Math.min(cellCulture.culture().getHeight() - 1, Math.max(0, (int) Math.floor((y + pixelRect.getMinY()) / getCellSize()))));
   }
 
 
+  private void onDataChanged() {
+    canvas.levelOfDetail.invalidate();
+  }
+
   private void onResize() {
     try {
       resizing = true;
@@ -283,18 +325,24 @@ public class CellCultureDataRenderer extends GridPane {
   }
 
   private boolean isEffectivelyShowingGrid() {
-    if (!isShowGrid()) {
+    if (!isShowGrid() || getZoomOut() > 0) {
       return false;
     }
     return MIN_GRID_SCALE <= scale.get();
   }
 
+  // The size of a cell in pixels
+  private double getCellSize() {
+    int zoomOut = getZoomOut();
+    return zoomOut > 0 ? 1.0 / (1 << zoomOut) : getScale();
+  }
+
   private double getAllDataWidthInPixel() {
-    return cellCulture.culture().getWidth() * getScale() + (isEffectivelyShowingGrid() ? 1 : 0);
+    return Math.ceil(cellCulture.culture().getWidth() * getCellSize()) + (isEffectivelyShowingGrid() ? 1 : 0);
   }
 
   private double getAllDataHeightInPixel() {
-    return cellCulture.culture().getHeight() * getScale() + (isEffectivelyShowingGrid() ? 1 : 0);
+    return Math.ceil(cellCulture.culture().getHeight() * getCellSize()) + (isEffectivelyShowingGrid() ? 1 : 0);
   }
 
 
@@ -352,9 +400,72 @@ public class CellCultureDataRenderer extends GridPane {
   }
 
 
+  static Image createImage(Byte2DArray data, Rectangle rect, PixelFormat<ByteBuffer> format) {
+    int x0 = Math.max(rect.x(), 0);
+    int y0 = Math.max(rect.y(), 0);
+    int w = Math.min(rect.width(), data.getWidth() - x0);
+    int h = Math.min(rect.height(), data.getHeight() - y0);
+    WritableImage image = new WritableImage(w, h);
+    ByteBuffer buffer = data.toByteBuffer(false);
+
+    // The rows are uploaded at once, using the width of the data as scanline stride
+    buffer.position(x0 + data.getWidth() * y0);
+    image.getPixelWriter().setPixels(0, 0, w, h, format, buffer, data.getWidth());
+    return image;
+  }
+
+  static PixelFormat<ByteBuffer> createPixelFormat(CellSystem cellSystem, CellType cellType) {
+    int[] colors = createPalette(cellSystem, cellType);
+    return colors == null ? null : PixelFormat.createByteIndexedInstance(colors);
+  }
+
+  // Shows a zoom out level as ratio of pixels to cells, e.g. level 2 as "1:4"
+  static StringConverter<Integer> createZoomOutConverter() {
+    return new StringConverter<>() {
+      @Override
+      public String toString(Integer zoomOut) {
+        return zoomOut == null ? "" : "1:" + (1 << zoomOut);
+      }
+
+      @Override
+      public Integer fromString(String string) {
+        try {
+          int ratio = Integer.parseInt(string.substring(string.indexOf(':') + 1).trim());
+          return Math.min(MAX_ZOOM_OUT, 31 - Integer.numberOfLeadingZeros(Math.max(1, ratio)));
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    };
+  }
+
+  static int[] createPalette(CellSystem cellSystem, CellType cellType) {
+    if (cellSystem == null) {
+      return null;
+    }
+
+    int[] colors = new int[cellSystem.getCellTypeCount() + 1];
+    for (int i = 0; i < colors.length - 1; i++) {
+      if (cellType == null || cellType.getId() == i) {
+        colors[i] = 0xff000000 | ModelUtils.color2rgb(cellSystem.getCellType(i).getColor());
+      }
+    }
+    return colors;
+  }
+
   private class DataCanvas extends Canvas {
 
+    private final ViewportImage viewportImage;
+    private final LevelOfDetailCache levelOfDetail;
+    private final RenderEvent event;
+    private Image gridTile;
+    private Color gridTileColor;
+
     private DataCanvas() {
+      this.viewportImage = new ViewportImage();
+      this.levelOfDetail = new LevelOfDetailCache(this::draw);
+      // The event is reused for each frame, so that drawing does not allocate anything while not recording
+      this.event = new RenderEvent();
       setSnapToPixel(true);
     }
 
@@ -372,6 +483,7 @@ public class CellCultureDataRenderer extends GridPane {
       if (resizing) {
         return;
       }
+      event.begin();
       GraphicsContext gc = getGraphicsContext2D();
       Rectangle2D pixelRect = getPixelRect();
 
@@ -387,6 +499,16 @@ public class CellCultureDataRenderer extends GridPane {
       drawCellDrawing(gc, pixelRect, cellRect);
       drawGrid(gc, pixelRect, cellRect);
       drawSelection(gc);
+      event.end();
+      if (event.shouldCommit()) {
+        event.width = (int) getWidth();
+        event.height = (int) getHeight();
+        event.scale = getScale();
+        event.zoomOut = getZoomOut();
+        event.cells = (long) cellRect.width() * cellRect.height();
+        event.grid = isEffectivelyShowingGrid();
+        event.commit();
+      }
     }
 
     private void drawCellDrawing(GraphicsContext gc, Rectangle2D pixelRect, Rectangle cellRect) {
@@ -413,13 +535,13 @@ public class CellCultureDataRenderer extends GridPane {
 
       gc.setImageSmoothing(false);
 
-      int scale = getScale();
+      double cellSize = getCellSize();
       gc.drawImage(
           image,
           0, 0,
           image.getWidth(), image.getHeight(),
-          drawRect.x() * scale - pixelRect.getMinX(), drawRect.y() * scale - pixelRect.getMinY(),
-          image.getWidth() * scale, image.getHeight() * scale);
+          drawRect.x() * cellSize - pixelRect.getMinX(), drawRect.y() * cellSize - pixelRect.getMinY(),
+          image.getWidth() * cellSize, image.getHeight() * cellSize);
     }
 
     private void drawSelection(GraphicsContext gc) {
@@ -443,57 +565,40 @@ public class CellCultureDataRenderer extends GridPane {
     }
 
     private void drawData(GraphicsContext gc, Rectangle2D pixelRect, Rectangle cellRect) {
-      Image image = createImage(cellCulture.culture().getData(), cellRect, null);
+      int[] palette = createPalette(cellCulture.system(), null);
+      if (palette == null) {
+        return;
+      }
+
+      // When zoomed out, the image is created from the level of detail with one cell per pixel; until the level of
+      // detail of the current data has been built in the background, the one of the previous data is drawn
+      int zoomOut = getZoomOut();
+      Byte2DArray data = levelOfDetail.get(cellCulture.culture().getData(), zoomOut);
+      Rectangle rect = zoomOut == 0 ? cellRect : new Rectangle(cellRect.x() >> zoomOut, cellRect.y() >> zoomOut,
+          (cellRect.width() >> zoomOut) + 2, (cellRect.height() >> zoomOut) + 2);
+      Image image = viewportImage.update(data, rect, palette);
       if (image == null) {
         return;
       }
       int grid = isEffectivelyShowingGrid() ? 1 : 0;
-      int scale = getScale();
-      double dx = cellRect.x() * scale + grid - pixelRect.getMinX();
-      double dy = cellRect.y() * scale + grid - pixelRect.getMinY();
+      double size = getCellSize() * (1 << zoomOut);
+      double dx = Math.max(rect.x(), 0) * size + grid - pixelRect.getMinX();
+      double dy = Math.max(rect.y(), 0) * size + grid - pixelRect.getMinY();
 
       gc.setImageSmoothing(false);
 
       gc.drawImage(
           image,
           0, 0, image.getWidth(), image.getHeight(),
-          dx, dy, image.getWidth() * scale, image.getHeight() * scale);
+          dx, dy, image.getWidth() * size, image.getHeight() * size);
     }
 
     private Image createImage(Byte2DArray data, Rectangle rect, CellType cellTypeToDraw) {
-      PixelFormat<ByteBuffer> format = createPixelFormat(cellTypeToDraw);
+      PixelFormat<ByteBuffer> format = createPixelFormat(cellCulture.system(), cellTypeToDraw);
       if (format == null) {
         return null;
       }
-
-      int x0 = Math.max(rect.x(), 0);
-      int y0 = Math.max(rect.y(), 0);
-      int w = Math.min(rect.width(), data.getWidth() - x0);
-      int h = Math.min(rect.height(), data.getHeight() - y0);
-      WritableImage image = new WritableImage(w, h);
-      PixelWriter writer = image.getPixelWriter();
-      ByteBuffer buffer = data.toByteBuffer(false);
-
-      for (int y = 0; y < h; y++) {
-        buffer.position(x0 + data.getWidth() * (y0 + y));
-        writer.setPixels(0, y, w, 1, format, buffer, w);
-      }
-      return image;
-    }
-
-    private PixelFormat<ByteBuffer> createPixelFormat(CellType cellType) {
-      CellSystem cellSystem = cellCulture.system();
-      if (cellSystem == null) {
-        return null;
-      }
-
-      int[] colors = new int[cellSystem.getCellTypeCount() + 1];
-      for (int i = 0; i < colors.length - 1; i++) {
-        if (cellType == null || cellType.getId() == i) {
-          colors[i] = 0xff000000 | ModelUtils.color2rgb(cellSystem.getCellType(i).getColor());
-        }
-      }
-      return PixelFormat.createByteIndexedInstance(colors);
+      return CellCultureDataRenderer.createImage(data, rect, format);
     }
 
     private void drawGrid(GraphicsContext gc, Rectangle2D pixelRect, Rectangle cellRect) {
@@ -501,22 +606,34 @@ public class CellCultureDataRenderer extends GridPane {
         return;
       }
 
-      gc.setStroke(getGridColor());
-      gc.setLineWidth(1);
+      // The grid is filled with a pattern of one cell, so that it costs a single call instead of a call per line
       int scale = getScale();
-      double x = cellRect.width() * scale + 0.5 - pixelRect.getMinX() % scale;
-      double y = cellRect.height() * scale + 0.5 - pixelRect.getMinY() % scale;
-      for (double i = x; i >= 0; i -= scale) {
-        gc.strokeLine(i, 0, i, y);
-      }
-      for (var i = y; i >= 0; i -= scale) {
-        gc.strokeLine(0, i, x, i);
+      double x = cellRect.width() * scale + 1 - pixelRect.getMinX() % scale;
+      double y = cellRect.height() * scale + 1 - pixelRect.getMinY() % scale;
+      gc.setFill(new ImagePattern(getGridTile(scale, getGridColor()),
+          -(pixelRect.getMinX() % scale), -(pixelRect.getMinY() % scale), scale, scale, false));
+      gc.fillRect(0, 0, x, y);
+    }
+
+    // The image of a grid cell, having the lines at its top and left; it is created again only if the scale or the
+    // color of the grid changed
+    private Image getGridTile(int scale, Color color) {
+      if (gridTile == null || gridTile.getWidth() != scale || !color.equals(gridTileColor)) {
+        WritableImage tile = new WritableImage(scale, scale);
+        PixelWriter writer = tile.getPixelWriter();
+        for (int i = 0; i < scale; i++) {
+          writer.setColor(i, 0, color);
+          writer.setColor(0, i, color);
+        }
+        gridTile = tile;
+        gridTileColor = color;
       }
+      return gridTile;
     }
 
     Rectangle getCellRect(Rectangle2D pixelRect) {
       double ofs = isEffectivelyShowingGrid() ? 1 : 0;
-      double scale = getScale();
+      double scale = getCellSize();
       CellCulture culture = cellCulture.culture();
       return new Rectangle(
           (int) Math.floor(pixelRect.getMinX() / scale),
@@ -527,7 +644,7 @@ public class CellCultureDataRenderer extends GridPane {
 
     Rectangle2D getPixelRect(Rectangle cellRect) {
       Rectangle2D pixelRect = getPixelRect();
-      int scale = getScale();
+      double scale = getCellSize();
       return new Rectangle2D(
           cellRect.x() * scale - pixelRect.getMinX(),
           cellRect.y() * scale - pixelRect.getMinY(),
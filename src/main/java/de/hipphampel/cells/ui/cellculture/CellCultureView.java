@@ -102,6 +102,8 @@ public class CellCultureView extends View {
   @FXML
   private Spinner<Integer> scaleSpinner;
   @FXML
+  private Spinner<Integer> zoomOutSpinner;
+  @FXML
   private ToggleButton gridToggleButton;
   @FXML
   private ToggleButton pasteDrawToolButton;
@@ -136,6 +138,9 @@ public class CellCultureView extends View {
     this.headerLabel.cellCultureProperty().bind(cellCulture);
     this.cellCultureInfoEditor.cellCultureProperty().bind(cellCulture);
     this.scaleSpinner.getValueFactory().valueProperty().bindBidirectional(this.cellCultureDataRenderer.scaleProperty());
+    this.scaleSpinner.disableProperty().bind(this.cellCultureDataRenderer.zoomOutProperty().isNotEqualTo(0));
+    this.zoomOutSpinner.getValueFactory().setConverter(CellCultureDataRenderer.createZoomOutConverter());
+    this.zoomOutSpinner.getValueFactory().valueProperty().bindBidirectional(this.cellCultureDataRenderer.zoomOutProperty());
     this.gridToggleButton.selectedProperty().bindBidirectional(this.cellCultureDataRenderer.showGridProperty());
 
     this.drawStack = new ArrayList<>();
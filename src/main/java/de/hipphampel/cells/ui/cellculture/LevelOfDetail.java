@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.ui.cellculture;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Mip-map like pyramid of a cell culture for zooming out: each level halves the width and height of the level
+// before, the buffers of the levels are reused as long as the size of the culture does not change. See
+// LevelOfDetailCache for building it in the background
+class LevelOfDetail {
+
+  private static final int MAX_CELLS_PER_TASK = 1 << 16;
+
+  private final List<Byte2DArray> levels = new ArrayList<>();
+
+  // Returns the data reduced by 2^level in each direction, level 0 is the data itself
+  Byte2DArray reduce(Byte2DArray data, int level) {
+    Byte2DArray source = data;
+    for (int i = 0; i < level; i++) {
+      int width = (source.getWidth() + 1) / 2;
+      int height = (source.getHeight() + 1) / 2;
+      if (levels.size() == i) {
+        levels.add(null);
+      }
+      Byte2DArray target = levels.get(i);
+      if (target == null || target.getWidth() != width || target.getHeight() != height) {
+        target = Byte2DArray.newInstance(width, height);
+        levels.set(i, target);
+      }
+      ForkJoinPool.commonPool().invoke(new Reduce(source, target, 0, height));
+      source = target;
+    }
+    return source;
+  }
+
+  // Returns a level computed by the last call of reduce, provided it computed at least that level
+  Byte2DArray getLevel(int level) {
+    return levels.get(level - 1);
+  }
+
+  // Reduces a block of four cells to the most frequent cell type. Since the first cell type is usually the empty
+  // background, it is chosen only if the block contains no other cell type, so that sparse cells remain visible
+  static byte dominant(byte a, byte b, byte c, byte d) {
+    // Counting each cell type at its first occurrence is sufficient, ties are won by the first one
+    int countA = a == 0 ? 0 : 1 + (a == b ? 1 : 0) + (a == c ? 1 : 0) + (a == d ? 1 : 0);
+    int countB = b == 0 ? 0 : 1 + (b == c ? 1 : 0) + (b == d ? 1 : 0);
+    int countC = c == 0 ? 0 : 1 + (c == d ? 1 : 0);
+    int countD = d == 0 ? 0 : 1;
+
+    byte result = a;
+    int count = countA;
+    if (countB > count) {
+      result = b;
+      count = countB;
+    }
+    if (countC > count) {
+      result = c;
+      count = countC;
+    }
+    if (countD > count) {
+      result = d;
+    }
+    return result;
+  }
+
+  private static class Reduce extends RecursiveAction {
+
+    private final Byte2DArray source;
+    private final Byte2DArray target;
+    private final int y0;
+    private final int y1;
+
+    Reduce(Byte2DArray source, Byte2DArray target, int y0, int y1) {
+      this.source = source;
+      this.target = target;
+      this.y0 = y0;
+      this.y1 = y1;
+    }
+
+    @Override
+    protected void compute() {
+      if ((long) (y1 - y0) * target.getWidth() > MAX_CELLS_PER_TASK && y1 - y0 > 1) {
+        int ym = (y0 + y1) / 2;
+        invokeAll(new Reduce(source, target, y0, ym), new Reduce(source, target, ym, y1));
+        return;
+      }
+
+      // Cells outside the source are treated like the background
+      int sourceWidth = source.getWidth();
+      int sourceHeight = source.getHeight();
+      for (int y = y0; y < y1; y++) {
+        int sy = 2 * y;
+        boolean hasBelow = sy + 1 < sourceHeight;
+        for (int x = 0; x < target.getWidth(); x++) {
+          int sx = 2 * x;
+          boolean hasRight = sx + 1 < sourceWidth;
+          target.setUnsafe(x, y, dominant(
+              source.getUnsafe(sx, sy),
+              hasRight ? source.getUnsafe(sx + 1, sy) : 0,
+              hasBelow ? source.getUnsafe(sx, sy + 1) : 0,
+              hasRight && hasBelow ? source.getUnsafe(sx + 1, sy + 1) : 0));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.ui.cellculture;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import javafx.application.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Level of detail of the data shown by a renderer. The pyramid is built in the background, so that the FX thread only
+// picks a level of a completed pyramid, which is kept until the data changes. While the pyramid of the current data is
+// built, the one of the previous data is shown; the pyramids are double buffered, so the shown one is never written.
+// The data itself may be overwritten while the pyramid is built (e.g. the display buffers of a generator or an edit),
+// so the background build works on a snapshot taken on the FX thread. All methods are called on the FX thread
+class LevelOfDetailCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LevelOfDetailCache.class);
+
+  private final Runnable onUpdate;
+  private LevelOfDetail current;
+  private LevelOfDetail spare;
+  // Only one pyramid is built at a time, so one snapshot is sufficient
+  private Byte2DArray snapshot;
+  private Byte2DArray currentData;
+  private int currentLevel;
+  private long currentVersion;
+  // The version distinguishes different contents of the same array, e.g. the reused display buffers of a generator
+  private long version;
+  private boolean building;
+
+  LevelOfDetailCache(Runnable onUpdate) {
+    this.onUpdate = onUpdate;
+    this.current = new LevelOfDetail();
+    this.spare = new LevelOfDetail();
+  }
+
+  // To be called whenever the data or its content changes
+  void invalidate() {
+    version++;
+  }
+
+  // Returns the data reduced by 2^level in each direction, level 0 is the data itself. If the pyramid of the data is
+  // not complete yet, it is started to be built and the one of the previous data is returned. If there is no suitable
+  // previous one, e.g. when zooming out for the first time, the pyramid is computed right away
+  Byte2DArray get(Byte2DArray data, int level) {
+    if (level == 0) {
+      return data;
+    }
+    if (currentData == null || currentLevel < level || currentData.getWidth() != data.getWidth()
+        || currentData.getHeight() != data.getHeight()) {
+      current.reduce(data, level);
+      install(data, level, version);
+    } else if (currentData != data || currentVersion != version) {
+      build(data, level);
+    }
+    return current.getLevel(level);
+  }
+
+  // When a pyramid is completed, the view is updated, which starts the next one if the data has changed meanwhile
+  private void build(Byte2DArray data, int level) {
+    if (building) {
+      return;
+    }
+    building = true;
+    if (snapshot == null || snapshot.getWidth() != data.getWidth() || snapshot.getHeight() != data.getHeight()) {
+      snapshot = Byte2DArray.newInstance(data.getWidth(), data.getHeight());
+    }
+    data.toByteBuffer(false).get(0, snapshot.getData());
+    Byte2DArray source = snapshot;
+    LevelOfDetail target = spare;
+    long targetVersion = version;
+    CompletableFuture.runAsync(() -> target.reduce(source, level), ForkJoinPool.commonPool())
+        .whenComplete((ignore, e) -> Platform.runLater(() -> onBuilt(target, data, level, targetVersion, e)));
+  }
+
+  private void onBuilt(LevelOfDetail target, Byte2DArray data, int level, long targetVersion, Throwable e) {
+    building = false;
+    if (e != null) {
+      LOGGER.error("Failed to compute the level of detail of the cell culture", e);
+      return;
+    }
+    // The current pyramid might have been computed right away meanwhile, so it is possibly newer than this one
+    if (targetVersion > currentVersion || targetVersion == currentVersion && level > currentLevel) {
+      spare = current;
+      current = target;
+      install(data, level, targetVersion);
+    } else if (currentVersion == version) {
+      return;
+    }
+    onUpdate.run();
+  }
+
+  private void install(Byte2DArray data, int level, long version) {
+    currentData = data;
+    currentLevel = level;
+    currentVersion = version;
+  }
+}
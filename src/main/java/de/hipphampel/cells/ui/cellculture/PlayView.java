@@ -26,20 +26,29 @@ import static de.hipphampel.cells.ui.common.UiConstants.STYLE_CLASS_PAUSE16;
 import static de.hipphampel.cells.ui.common.UiConstants.STYLE_CLASS_PLAY16;
 import static de.hipphampel.cells.ui.common.UiConstants.TAG_CONTENT;
 
+import de.hipphampel.cells.ServiceLocator;
+import de.hipphampel.cells.model.cellculture.GenerationHistory;
 import de.hipphampel.cells.model.cellculture.Generator;
 import de.hipphampel.cells.model.cellculture.Generator.State;
+import de.hipphampel.cells.model.cellculture.GeneratorMetrics;
 import de.hipphampel.cells.model.cellculture.ResolvedCellCulture;
 import de.hipphampel.cells.resources.Resources;
 import de.hipphampel.cells.ui.common.FXMLUtils;
 import de.hipphampel.mv4fx.view.View;
 import java.util.Set;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Slider;
 import javafx.scene.control.Spinner;
 import javafx.scene.control.ToggleButton;
+import javafx.scene.control.ToolBar;
 import javafx.scene.layout.VBox;
+import javafx.util.Duration;
 import javafx.util.StringConverter;
 
 public class PlayView extends View {
@@ -47,6 +56,8 @@ public class PlayView extends View {
   private final ResolvedCellCulture cellCulture;
   private final Generator generator;
   private final Label tabLabel;
+  private boolean updatingTimeline;
+  private int pendingSeek = -1;
 
   @FXML
   private CellCultureDataRenderer cellCultureDataRenderer;
@@ -59,11 +70,45 @@ public class PlayView extends View {
   @FXML
   private Button pauseButton;
   @FXML
+  private Button fastForwardButton;
+  @FXML
+  private Spinner<Integer> fastForwardSpinner;
+  @FXML
+  private ProgressBar fastForwardProgressBar;
+  @FXML
   private Slider speedSlider;
   @FXML
+  private CheckBox freeRunningCheckBox;
+  @FXML
+  private CheckBox hashLifeCheckBox;
+  @FXML
+  private CheckBox stopOnCycleCheckBox;
+  @FXML
+  private CheckBox historyCheckBox;
+  @FXML
+  private CheckBox populationCheckBox;
+  @FXML
+  private PopulationChart populationChart;
+  @FXML
+  private Label generationLabel;
+  @FXML
+  private ToolBar timelineToolBar;
+  @FXML
+  private Slider timelineSlider;
+  @FXML
+  private Label truncationLabel;
+  @FXML
   private Spinner<Integer> scaleSpinner;
   @FXML
+  private Spinner<Integer> zoomOutSpinner;
+  @FXML
   private ToggleButton gridToggleButton;
+  @FXML
+  private CheckBox metricsCheckBox;
+  @FXML
+  private Label metricsLabel;
+  private final Timeline metricsTimeline;
+  private final RenderScheduler renderScheduler;
 
   public PlayView(ResolvedCellCulture cellCulture) {
     VBox content = new VBox();
@@ -71,7 +116,8 @@ public class PlayView extends View {
     setContent(content);
 
     this.cellCulture = cellCulture;
-    this.generator = new Generator(cellCulture.system(), cellCulture.culture());
+    this.renderScheduler = new RenderScheduler(this::render);
+    this.generator = new Generator(cellCulture.system(), cellCulture.culture(), ServiceLocator.getSimulationPools());
     this.generator.generationProperty().addListener((ign, oldValue, newValue) -> onGenerationChanged(newValue.longValue()));
     this.generator.stateProperty().addListener(ign -> onGeneratorStateChanged());
 
@@ -83,8 +129,29 @@ public class PlayView extends View {
 
     generator.setSpeed(speedSlider.getValue());
     speedSlider.valueProperty().addListener((ign, oldValue, newValue) -> generator.setSpeed(newValue.doubleValue()));
+    this.fastForwardProgressBar.progressProperty().bind(generator.progressProperty());
+    this.fastForwardProgressBar.visibleProperty().bind(generator.stateProperty().isEqualTo(State.FAST_FORWARDING));
+    this.freeRunningCheckBox.selectedProperty().bindBidirectional(generator.freeRunningProperty());
+    this.hashLifeCheckBox.selectedProperty().bindBidirectional(generator.hashLifeProperty());
+    this.stopOnCycleCheckBox.selectedProperty().bindBidirectional(generator.stopOnCycleProperty());
+    this.historyCheckBox.selectedProperty().bindBidirectional(generator.recordHistoryProperty());
+    this.timelineToolBar.visibleProperty().bind(generator.recordHistoryProperty());
+    this.timelineToolBar.managedProperty().bind(generator.recordHistoryProperty());
+    this.timelineSlider.valueProperty().addListener(ign -> onTimelineChanged());
+    this.timelineSlider.valueChangingProperty().addListener(ign -> onTimelineChanged());
+    this.populationCheckBox.selectedProperty().bindBidirectional(generator.recordPopulationProperty());
+    this.populationChart.visibleProperty().bind(generator.recordPopulationProperty());
+    this.populationChart.managedProperty().bind(generator.recordPopulationProperty());
+    this.populationChart.setPopulationHistory(cellCulture.system(), generator.getPopulationHistory());
     this.scaleSpinner.getValueFactory().valueProperty().bindBidirectional(this.cellCultureDataRenderer.scaleProperty());
+    this.scaleSpinner.disableProperty().bind(this.cellCultureDataRenderer.zoomOutProperty().isNotEqualTo(0));
+    this.zoomOutSpinner.getValueFactory().setConverter(CellCultureDataRenderer.createZoomOutConverter());
+    this.zoomOutSpinner.getValueFactory().valueProperty().bindBidirectional(this.cellCultureDataRenderer.zoomOutProperty());
     this.gridToggleButton.selectedProperty().bindBidirectional(this.cellCultureDataRenderer.showGridProperty());
+    this.metricsLabel.visibleProperty().bind(metricsCheckBox.selectedProperty());
+    this.metricsTimeline = new Timeline(new KeyFrame(Duration.millis(500), evt -> updateMetrics()));
+    this.metricsTimeline.setCycleCount(Timeline.INDEFINITE);
+    this.metricsCheckBox.selectedProperty().addListener((ign, oldValue, newValue) -> onMetricsToggled(newValue));
 
     cellCultureDataRenderer.setCellCulture(cellCulture);
     this.cellCultureDataRenderer.setScale(10);
@@ -106,7 +173,9 @@ public class PlayView extends View {
 
   @Override
   public void close() {
-    generator.stop();
+    metricsTimeline.stop();
+    renderScheduler.stop();
+    generator.close();
     super.close();
   }
 
@@ -120,6 +189,14 @@ public class PlayView extends View {
     generator.play();
   }
 
+  @FXML
+  public void onFastForward() {
+    int generations = Math.min(fastForwardSpinner.getValue(), Integer.MAX_VALUE - generator.getGeneration());
+    if (generations > 0) {
+      generator.fastForward(generations);
+    }
+  }
+
   @FXML
   public void onPause() {
     generator.stop();
@@ -129,16 +206,102 @@ public class PlayView extends View {
   public void onReset() {
     generator.reset();
   }
+
+  private void onTimelineChanged() {
+    if (updatingTimeline) {
+      return;
+    }
+    // While a generation is restored, further requests are coalesced to the last one
+    int target = (int) Math.round(timelineSlider.getValue());
+    if (generator.getState() == State.IDLE) {
+      pendingSeek = -1;
+      generator.seek(target);
+    } else {
+      pendingSeek = target;
+    }
+  }
+
+  private void updateTimeline(long generation) {
+    GenerationHistory history = generator.getGenerationHistory();
+    updatingTimeline = true;
+    timelineSlider.setMin(Math.max(0, history.getFirstGeneration()));
+    timelineSlider.setMax(Math.max(generation, history.getLastGeneration()));
+    if (!timelineSlider.isValueChanging() && pendingSeek < 0) {
+      timelineSlider.setValue(generation);
+    }
+    updatingTimeline = false;
+    // Computing the next generation replaces the recorded generations after the current one
+    boolean truncating = generation < history.getLastGeneration();
+    if (truncating) {
+      truncationLabel.setText(Resources.getResource("playView.truncationLabel", history.getLastGeneration()));
+    }
+    truncationLabel.setVisible(truncating);
+    truncationLabel.setManaged(truncating);
+  }
+
+  private void onMetricsToggled(boolean visible) {
+    if (visible) {
+      updateMetrics();
+      metricsTimeline.play();
+    } else {
+      metricsTimeline.stop();
+    }
+  }
+
+  private void updateMetrics() {
+    GeneratorMetrics metrics = generator.getMetrics();
+    metricsLabel.setText(Resources.getResource("playView.metricsLabel",
+        metrics.getGenerationsPerSecond(),
+        metrics.getCellsPerSecond() / 1_000_000,
+        metrics.getComputeMillis(),
+        metrics.getPublishMillis(),
+        metrics.getRenderMillis(),
+        metrics.getActiveThreadCount()));
+  }
+
   private void onGenerationChanged(long generation) {
-    cellCultureDataRenderer.redraw();
+    // The rendering is deferred to the next frame, so generations published in between are skipped
+    renderScheduler.request();
+    updateTimeline(generation);
+    int period = generator.getPeriod();
+    if (period == 0) {
+      generationLabel.setText(Resources.getResource("playView.generationLabel", generation));
+    } else if (period == 1) {
+      generationLabel.setText(Resources.getResource("playView.stillLifeGenerationLabel", generation));
+    } else {
+      generationLabel.setText(Resources.getResource("playView.cycleGenerationLabel", generation, period));
+    }
     revertButton.setDisable(generator.getState() != State.IDLE || generation == 0);
   }
 
+  private void render() {
+    long start = System.nanoTime();
+    cellCultureDataRenderer.redraw();
+    if (populationChart.isVisible()) {
+      populationChart.draw();
+    }
+    generator.getMetrics().recordRender(System.nanoTime() - start);
+    // Only now the generator publishes the next generation when free running
+    generator.requestSnapshot();
+  }
+
   private void onGeneratorStateChanged() {
     Generator.State state = generator.getState();
     revertButton.setDisable(state != State.IDLE || generator.getGeneration() == 0);
     stepButton.setDisable(state != State.IDLE);
     playButton.setDisable(state != State.IDLE);
-    pauseButton.setDisable(state != State.PLAYING);
+    fastForwardButton.setDisable(state != State.IDLE);
+    fastForwardSpinner.setDisable(state != State.IDLE);
+    freeRunningCheckBox.setDisable(state != State.IDLE);
+    stopOnCycleCheckBox.setDisable(state != State.IDLE);
+    historyCheckBox.setDisable(state != State.IDLE);
+    timelineSlider.setDisable(state == State.PLAYING || state == State.FAST_FORWARDING || state == State.STOPPING);
+    if (state == State.IDLE && pendingSeek >= 0) {
+      int target = pendingSeek;
+      pendingSeek = -1;
+      generator.seek(target);
+    }
+    hashLifeCheckBox.setDisable(state != State.IDLE || !generator.isHashLifeSupported());
+    pauseButton.setDisable(state != State.PLAYING && state != State.FAST_FORWARDING);
   }
 }
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.ui.cellculture;
+
+import de.hipphampel.cells.model.cellculture.PopulationHistory;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.model.cellsystem.CellType;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+// Draws the population history as one line per cell type; the empty cell type is omitted, since it usually dominates
+// the others
+public class PopulationChart extends Region {
+
+  private static final double PADDING = 4;
+
+  private final Canvas canvas;
+  private CellSystem cellSystem;
+  private PopulationHistory populationHistory;
+
+  public PopulationChart() {
+    this.canvas = new Canvas();
+    getChildren().add(canvas);
+    setPrefHeight(100);
+    setMinHeight(0);
+    widthProperty().addListener(ov -> draw());
+    heightProperty().addListener(ov -> draw());
+  }
+
+  public void setPopulationHistory(CellSystem cellSystem, PopulationHistory populationHistory) {
+    this.cellSystem = cellSystem;
+    this.populationHistory = populationHistory;
+    draw();
+  }
+
+  public void draw() {
+    canvas.setWidth(getWidth());
+    canvas.setHeight(getHeight());
+    GraphicsContext gc = canvas.getGraphicsContext2D();
+    gc.setFill(Color.WHITE);
+    gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    if (populationHistory == null) {
+      return;
+    }
+
+    // Copy the entries first, since they are concurrently written by the generator
+    int size;
+    int[][] counts;
+    synchronized (populationHistory) {
+      size = populationHistory.size();
+      counts = new int[size][];
+      for (int entry = 0; entry < size; entry++) {
+        counts[entry] = populationHistory.getCounts(entry);
+      }
+    }
+    if (size < 2) {
+      return;
+    }
+
+    int max = 1;
+    for (int[] entry : counts) {
+      for (int cellTypeId = 1; cellTypeId < entry.length; cellTypeId++) {
+        max = Math.max(max, entry[cellTypeId]);
+      }
+    }
+    double width = canvas.getWidth() - 2 * PADDING;
+    double height = canvas.getHeight() - 2 * PADDING;
+    double dx = width / (populationHistory.getCapacity() - 1);
+    double[] xs = new double[size];
+    double[] ys = new double[size];
+    for (int cellTypeId = 1; cellTypeId < populationHistory.getCellTypeCount(); cellTypeId++) {
+      for (int entry = 0; entry < size; entry++) {
+        xs[entry] = PADDING + entry * dx;
+        ys[entry] = PADDING + height - height * counts[entry][cellTypeId] / max;
+      }
+      gc.setStroke(getColor(cellTypeId));
+      gc.strokePolyline(xs, ys, size);
+    }
+  }
+
+  private Color getColor(int cellTypeId) {
+    CellType cellType = cellSystem == null || cellTypeId >= cellSystem.getCellTypeCount() ? null
+        : cellSystem.getCellType(cellTypeId);
+    return cellType == null || cellType.getColor() == null ? Color.BLACK : cellType.getColor();
+  }
+}
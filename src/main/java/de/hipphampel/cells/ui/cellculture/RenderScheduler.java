@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.ui.cellculture;
+
+import javafx.animation.AnimationTimer;
+
+// Coalesces render requests to at most one rendering per pulse of the FX thread, limited to the target frame rate, so
+// that the rendering does not depend on how fast the generations are computed. The timer runs only while there are
+// requests, so an idle view causes no pulses
+class RenderScheduler extends AnimationTimer {
+
+  public static final String TARGET_FPS_PROPERTY = "cells.render.targetFps";
+  public static final int DEFAULT_TARGET_FPS = 60;
+
+  private final Runnable render;
+  private final long frameNanos;
+  private boolean requested;
+  private long lastFrame;
+
+  RenderScheduler(Runnable render) {
+    this(render, Integer.getInteger(TARGET_FPS_PROPERTY, DEFAULT_TARGET_FPS));
+  }
+
+  RenderScheduler(Runnable render, int targetFps) {
+    if (targetFps <= 0) {
+      throw new IllegalArgumentException("Invalid target frame rate: " + targetFps);
+    }
+    this.render = render;
+    this.frameNanos = 1_000_000_000L / targetFps;
+  }
+
+  void request() {
+    requested = true;
+    start();
+  }
+
+  @Override
+  public void handle(long now) {
+    if (!requested) {
+      stop();
+      return;
+    }
+    // Pulses jitter a bit, so a frame that is slightly early must not be skipped
+    if (lastFrame != 0 && now - lastFrame < frameNanos * 3 / 4) {
+      return;
+    }
+    requested = false;
+    lastFrame = now;
+    render.run();
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.ui.cellculture;
+
+import de.hipphampel.array2dops.geom.Rectangle;
+import de.hipphampel.array2dops.model.Byte2DArray;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+// Keeps the image of the visible cells between redraws, together with a copy of the cells it shows. When the data
+// changes, only the changed span of each row is written to the image again; the whole image is written only if the
+// visible area or the colors change. The pixels are uploaded in as few calls as possible, since each call to the
+// pixel writer has a considerable overhead
+class ViewportImage {
+
+  private WritableImage image;
+  private Rectangle rect;
+  private ByteBuffer cells;
+  private int[] palette;
+  private PixelFormat<ByteBuffer> format;
+
+  Image update(Byte2DArray data, Rectangle visibleRect, int[] palette) {
+    int x0 = Math.max(visibleRect.x(), 0);
+    int y0 = Math.max(visibleRect.y(), 0);
+    int w = Math.min(visibleRect.width(), data.getWidth() - x0);
+    int h = Math.min(visibleRect.height(), data.getHeight() - y0);
+    if (w <= 0 || h <= 0) {
+      return null;
+    }
+
+    Rectangle clippedRect = new Rectangle(x0, y0, w, h);
+    boolean full = !clippedRect.equals(rect);
+    if (!Arrays.equals(palette, this.palette)) {
+      this.palette = palette.clone();
+      this.format = PixelFormat.createByteIndexedInstance(palette);
+      full = true;
+    }
+    if (image == null || image.getWidth() != w || image.getHeight() != h) {
+      image = new WritableImage(w, h);
+      cells = ByteBuffer.allocate(w * h);
+      full = true;
+    }
+    rect = clippedRect;
+
+    ByteBuffer source = data.toByteBuffer(false);
+    if (full) {
+      for (int y = 0; y < h; y++) {
+        cells.put(y * w, source, x0 + data.getWidth() * (y0 + y), w);
+      }
+      writePixels(0, 0, w, h);
+      return image;
+    }
+
+    // Consecutive changed rows are written by a single call, covering the changed columns of all these rows
+    int batchStart = -1;
+    int from = w;
+    int to = 0;
+    for (int y = 0; y < h; y++) {
+      int sourceIndex = x0 + data.getWidth() * (y0 + y);
+      int index = y * w;
+      int rowFrom = source.slice(sourceIndex, w).mismatch(cells.slice(index, w));
+      if (rowFrom < 0) {
+        if (batchStart >= 0) {
+          writePixels(from, batchStart, to - from, y - batchStart);
+          batchStart = -1;
+          from = w;
+          to = 0;
+        }
+        continue;
+      }
+      int rowTo = w;
+      while (source.get(sourceIndex + rowTo - 1) == cells.get(index + rowTo - 1)) {
+        rowTo--;
+      }
+      cells.put(index + rowFrom, source, sourceIndex + rowFrom, rowTo - rowFrom);
+      batchStart = batchStart < 0 ? y : batchStart;
+      from = Math.min(from, rowFrom);
+      to = Math.max(to, rowTo);
+    }
+    if (batchStart >= 0) {
+      writePixels(from, batchStart, to - from, h - batchStart);
+    }
+    return image;
+  }
+
+  private void writePixels(int x, int y, int width, int height) {
+    int stride = (int) image.getWidth();
+    image.getPixelWriter().setPixels(x, y, width, height, format, cells.position(y * stride + x), stride);
+  }
+}
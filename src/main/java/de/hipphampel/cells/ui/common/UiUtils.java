@@ -35,6 +35,7 @@ import de.hipphampel.cells.ui.cellculture.PlayView;
 import de.hipphampel.mv4fx.view.View;
 import de.hipphampel.mv4fx.view.ViewGroup;
 import de.hipphampel.mv4fx.view.ViewManager;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -89,6 +90,22 @@ public class UiUtils {
         .findFirst();
   }
 
+  // Play views work on copies of the cell culture and the cell system; their ids are combined as done by the
+  // PlayButtonDecoration
+  public static List<View> findViewsForPlay(CellCulture cellCulture) {
+    return ViewManager.getAllViews()
+        .filter(v -> v instanceof PlayView pv && pv.getCellCulture() != null
+            && pv.getCellCulture().id().startsWith(cellCulture.getId() + "-"))
+        .toList();
+  }
+
+  public static List<View> findViewsForPlay(CellSystem cellSystem) {
+    return ViewManager.getAllViews()
+        .filter(v -> v instanceof PlayView pv && pv.getCellCulture() != null
+            && pv.getCellCulture().id().endsWith("-" + cellSystem.getId()))
+        .toList();
+  }
+
   public static Optional<View> findViewForCellSystem(CellSystem cellSystem) {
     return ViewManager.getAllViews()
         .filter(v -> v instanceof CellSystemView csv && csv.getCellSystem() != null && Objects.equals(csv.getCellSystem().getId(),
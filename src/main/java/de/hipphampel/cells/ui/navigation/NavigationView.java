@@ -140,6 +140,7 @@ public class NavigationView extends View {
           .showAndWait().orElse(false);
       if (remove) {
         UiUtils.findViewForCellSystem(cellSystem).ifPresent(View::close);
+        UiUtils.findViewsForPlay(cellSystem).forEach(View::close);
         ServiceLocator.getCellSystemRepository().deleteCellSystem(cellSystem.getId());
       }
     }
@@ -150,6 +151,7 @@ public class NavigationView extends View {
           .showAndWait().orElse(false);
       if (remove) {
         UiUtils.findViewForCellCulture(cellCulture).ifPresent(View::close);
+        UiUtils.findViewsForPlay(cellCulture).forEach(View::close);
         ServiceLocator.getCellCultureRepository().deleteCellCulture(cellCulture.getId());
       }
     }
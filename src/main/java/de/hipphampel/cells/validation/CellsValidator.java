@@ -28,6 +28,7 @@ import de.hipphampel.cells.model.cellculture.CellCultureDimensions;
 import de.hipphampel.cells.model.cellsystem.CellSystem;
 import de.hipphampel.cells.model.cellsystem.Neighbourhood;
 import de.hipphampel.cells.model.validation.ValidationReport;
+import de.hipphampel.cells.monitoring.ValidationEvent;
 import de.hipphampel.cells.persistence.repository.CellCultureRepository;
 import de.hipphampel.validation.core.Validator;
 import de.hipphampel.validation.core.ValidatorBuilder;
@@ -52,7 +53,7 @@ public class CellsValidator {
   }
 
   public ValidationReport validateCellSystem(CellSystem facts) {
-    return validator.validate(ValidationReportReporter::new, facts, RuleSelector.of("cellSystem"));
+    return validate(facts, "cellSystem");
   }
 
   public void revalidateCellCulturesForCellSystem(CellSystem facts) {
@@ -64,15 +65,28 @@ public class CellsValidator {
   }
 
   public ValidationReport validateNeighbourhood(Neighbourhood facts) {
-    return validator.validate(ValidationReportReporter::new, facts, RuleSelector.of("neighbourhood"));
+    return validate(facts, "neighbourhood");
   }
 
   public ValidationReport validateCellCulture(CellCulture facts) {
-    return validator.validate(ValidationReportReporter::new, facts, RuleSelector.of("cellCulture"));
+    return validate(facts, "cellCulture");
   }
 
   public ValidationReport validateCellCultureDimensions(CellCultureDimensions facts) {
-    return validator.validate(ValidationReportReporter::new, facts, RuleSelector.of("cellCultureDimensions"));
+    return validate(facts, "cellCultureDimensions");
+  }
+
+  private ValidationReport validate(Object facts, String rules) {
+    ValidationEvent event = new ValidationEvent();
+    event.begin();
+    ValidationReport report = validator.validate(ValidationReportReporter::new, facts, RuleSelector.of(rules));
+    if (event.shouldCommit()) {
+      event.rules = rules;
+      event.severity = String.valueOf(report.severity());
+      event.messages = report.messages().size();
+      event.commit();
+    }
+    return report;
   }
 
 }
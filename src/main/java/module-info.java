@@ -26,8 +26,11 @@ module de.hipphampel.cells {
   requires de.hipphampel.array2dops;
   requires de.hipphampel.mv4fx;
   requires de.hipphampel.validation.core;
+  requires java.management;
   requires javafx.controls;
   requires javafx.fxml;
+  requires static jdk.incubator.vector;
+  requires jdk.jfr;
   requires org.slf4j;
 
   exports de.hipphampel.cells;
@@ -35,6 +38,7 @@ module de.hipphampel.cells {
   exports de.hipphampel.cells.model.cellsystem;
   exports de.hipphampel.cells.model.cellculture;
   exports de.hipphampel.cells.model.validation;
+  exports de.hipphampel.cells.monitoring;
   exports de.hipphampel.cells.persistence.repository;
   exports de.hipphampel.cells.ui.common;
   exports de.hipphampel.cells.ui.navigation;
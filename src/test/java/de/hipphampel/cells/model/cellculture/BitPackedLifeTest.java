@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import static de.hipphampel.cells.model.cellculture.TestUtils.assertSameCells;
+import static de.hipphampel.cells.model.cellculture.TestUtils.lifeSystem;
+import static de.hipphampel.cells.model.cellculture.TestUtils.populationOf;
+import static de.hipphampel.cells.model.cellculture.TestUtils.randomSoup;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.model.cellsystem.Neighbourhood;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+public class BitPackedLifeTest {
+
+  private static final int[] WIDTHS = {1, 2, 63, 64, 65, 130};
+  private static final int[] HEIGHTS = {1, 2, 3, 41};
+  private static final int GENERATIONS = 8;
+
+  @Test
+  public void step_conwaysLife() {
+    assertSameAsReference("3", "2-3");
+  }
+
+  @Test
+  public void step_highLife() {
+    assertSameAsReference("3,6", "2-3");
+  }
+
+  @Test
+  public void step_seeds() {
+    assertSameAsReference("2", null);
+  }
+
+  @Test
+  public void step_severalTasks() {
+    CellSystem cellSystem = lifeSystem("3", "2-3");
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (boolean wrapAround : new boolean[]{false, true}) {
+        BitPackedLife life = BitPackedLife.create(cellSystem, 130, 3000, wrapAround, 3);
+        assertNotNull(life);
+        assertEquals(3, life.getTaskCount());
+        assertSameAsReference(cellSystem, life, 130, 3000, wrapAround, new Random(3000), pool);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void create_unsupportedCellSystem() {
+    CellSystem cellSystem = lifeSystem("3", "2-3");
+    cellSystem.newCellType();
+    assertNull(BitPackedLife.create(cellSystem, 10, 10, false));
+
+    cellSystem = lifeSystem("3", "2-3");
+    cellSystem.setNeighbourhood(new Neighbourhood(List.of(1, 1, 1, 1, 0, 1, 1, 1, 0)));
+    assertNull(BitPackedLife.create(cellSystem, 10, 10, false));
+  }
+
+  private static void assertSameAsReference(String birth, String survive) {
+    CellSystem cellSystem = lifeSystem(birth, survive);
+    Random random = new Random(birth.hashCode());
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    for (int width : WIDTHS) {
+      for (int height : HEIGHTS) {
+        for (boolean wrapAround : new boolean[]{false, true}) {
+          BitPackedLife life = BitPackedLife.create(cellSystem, width, height, wrapAround);
+          assertNotNull(life);
+          assertSameAsReference(cellSystem, life, width, height, wrapAround, random, pool);
+        }
+      }
+    }
+  }
+
+  private static void assertSameAsReference(CellSystem cellSystem, BitPackedLife life, int width, int height,
+      boolean wrapAround, Random random, ForkJoinPool pool) {
+    LifeRules rules = LifeRules.of(cellSystem);
+    Byte2DArray expected = randomSoup(width, height, 2, random);
+    Byte2DArray actual = Byte2DArray.newInstance(width, height);
+    life.load(expected);
+    for (int generation = 1; generation <= GENERATIONS; generation++) {
+      expected = computeReference(rules, expected, wrapAround);
+      life.step(pool);
+      life.store(actual);
+      String message = width + "x" + height + (wrapAround ? " wrapping" : "") + ", generation " + generation;
+      assertSameCells(expected, actual, message);
+      assertEquals(populationOf(expected), life.getPopulation(), message);
+    }
+  }
+
+  // Counts the neighbours cell by cell, outside a non-wrapping culture all cells are empty
+  private static Byte2DArray computeReference(LifeRules rules, Byte2DArray data, boolean wrapAround) {
+    int width = data.getWidth();
+    int height = data.getHeight();
+    Byte2DArray next = Byte2DArray.newInstance(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int count = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+          for (int dx = -1; dx <= 1; dx++) {
+            int nx = x + dx;
+            int ny = y + dy;
+            if (wrapAround) {
+              nx = Math.floorMod(nx, width);
+              ny = Math.floorMod(ny, height);
+            }
+            if ((dx != 0 || dy != 0) && nx >= 0 && nx < width && ny >= 0 && ny < height) {
+              count += data.getUnsafe(nx, ny);
+            }
+          }
+        }
+        next.setUnsafe(x, y, (byte) rules.nextState(data.getUnsafe(x, y), count));
+      }
+    }
+    return next;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.model.cellsystem.Neighbourhood;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CompiledRulesTest {
+
+  @Test
+  public void compile_positiveWeights() {
+    CompiledRules rules = CompiledRules.compile(TestUtils.lifeSystem("3", "2-3"));
+
+    assertTrue(rules.hasTable(0));
+    assertTrue(rules.hasTable(1));
+    assertEquals(1, rules.computeNextCellType(0, new int[]{3, 5}));
+    assertEquals(0, rules.computeNextCellType(0, new int[]{4, 4}));
+    assertEquals(1, rules.computeNextCellType(1, new int[]{2, 6}));
+    assertEquals(0, rules.computeNextCellType(1, new int[]{1, 7}));
+  }
+
+  @Test
+  public void compile_negativeWeights() {
+    CellSystem cellSystem = TestUtils.lifeSystem("3", "2-3");
+    cellSystem.setNeighbourhood(new Neighbourhood(List.of(
+        1, 1, 1,
+        1, 0, -1,
+        1, 1, 1)));
+    CompiledRules rules = CompiledRules.compile(cellSystem);
+
+    // Counters may be negative, so the rules are evaluated instead of looked up
+    assertFalse(rules.hasTable(0));
+    assertFalse(rules.hasTable(1));
+    assertEquals(0, rules.computeNextCellType(0, new int[]{-1, 2}));
+    assertEquals(1, rules.computeNextCellType(0, new int[]{3, 1}));
+    assertEquals(0, rules.computeNextCellType(1, new int[]{-1, 2}));
+    assertEquals(1, rules.computeNextCellType(1, new int[]{2, 1}));
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import de.hipphampel.array2dops.model.Int2DArray;
+import de.hipphampel.cells.model.cellsystem.Neighbourhood;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntBinaryOperator;
+import org.junit.jupiter.api.Test;
+
+public class ConvolutionCountingTest {
+
+  private static final int WIDTH = 50;
+  private static final int ROWS = 6;
+
+  @Test
+  public void count_uniformBox() {
+    assertSameAsScalarCounting((dx, dy) -> 1);
+  }
+
+  @Test
+  public void count_rings() {
+    Random random = new Random(1);
+    int[] ringWeights = random.ints(5, -1, 5).toArray();
+    assertSameAsScalarCounting((dx, dy) -> ringWeights[Math.max(Math.abs(dx), Math.abs(dy))]);
+  }
+
+  @Test
+  public void count_rankOne() {
+    Random random = new Random(2);
+    int[] u = random.ints(9, 0, 4).toArray();
+    int[] v = random.ints(9, 1, 4).toArray();
+    assertSameAsScalarCounting((dx, dy) -> u[dx + 4] * v[dy + 4]);
+  }
+
+  @Test
+  public void create_notDecomposable() {
+    Int2DArray weights = neighbourhood(2, (dx, dy) -> dx == dy ? 1 : dx == -dy ? 2 : 0).getWeightsArray();
+    assertNull(ConvolutionCounting.create(weights, 2, WIDTH + 4, 2, WIDTH));
+  }
+
+  private static void assertSameAsScalarCounting(IntBinaryOperator weight) {
+    Random random = new Random(3);
+    for (int radius = 2; radius <= 4; radius++) {
+      for (int cellTypeCount = 2; cellTypeCount <= 4; cellTypeCount++) {
+        Int2DArray weights = neighbourhood(radius, weight).getWeightsArray();
+        int stride = WIDTH + 2 * radius;
+        ConvolutionCounting counting = ConvolutionCounting.create(weights, radius, stride, cellTypeCount, WIDTH);
+        assertNotNull(counting);
+        byte[] cells = new byte[stride * (ROWS + 2 * radius)];
+        for (int i = 0; i < cells.length; i++) {
+          cells[i] = (byte) (random.nextInt(3) == 0 ? random.nextInt(cellTypeCount) : 0);
+        }
+        String message = "radius " + radius + ", " + cellTypeCount + " cell types";
+
+        // Whole rows, where the vertical sums are rolled from one row to the next
+        for (int y = 0; y < ROWS; y++) {
+          assertCounts(counting, cells, cellTypeCount, weights, radius, stride, 0, y, WIDTH, y > 0, message);
+        }
+        // Segments of rows, as computed for runs of active tiles
+        for (int y = 0; y < ROWS; y++) {
+          assertCounts(counting, cells, cellTypeCount, weights, radius, stride, 7, y, 20, y > 0, message);
+        }
+        // Continuing with other columns must not reuse the previous sums
+        assertCounts(counting, cells, cellTypeCount, weights, radius, stride, 30, 1, 20, true, message);
+        assertCounts(counting, cells, cellTypeCount, weights, radius, stride, 0, 2, 1, true, message);
+      }
+    }
+  }
+
+  // Counts one neighbour at a time like Environment without row counting; counter 0 holds the weight of all
+  // non-empty neighbours
+  private static void assertCounts(ConvolutionCounting counting, byte[] cells, int cellTypeCount,
+      Int2DArray weights, int radius, int stride, int x0, int y, int length, boolean continued, String message) {
+    int index = (y + radius) * stride + x0 + radius;
+    counting.count(cells, index, length, continued);
+    int[] actual = new int[cellTypeCount];
+    for (int x = 0; x < length; x++) {
+      int[] expected = new int[cellTypeCount];
+      for (int dy = -radius; dy <= radius; dy++) {
+        for (int dx = -radius; dx <= radius; dx++) {
+          int cellTypeId = cells[index + x + dy * stride + dx];
+          if ((dx != 0 || dy != 0) && cellTypeId != 0) {
+            expected[0] += weights.getUnsafe(dx + radius, dy + radius);
+            expected[cellTypeId] += weights.getUnsafe(dx + radius, dy + radius);
+          }
+        }
+      }
+      counting.getCounters(x, actual);
+      assertArrayEquals(expected, actual, message + ", column " + (x0 + x) + ", row " + y);
+    }
+  }
+
+  private static Neighbourhood neighbourhood(int radius, IntBinaryOperator weight) {
+    List<Integer> weights = new ArrayList<>();
+    for (int dy = -radius; dy <= radius; dy++) {
+      for (int dx = -radius; dx <= radius; dx++) {
+        weights.add(dx == 0 && dy == 0 ? 0 : weight.applyAsInt(dx, dy));
+      }
+    }
+    return new Neighbourhood(weights);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import static de.hipphampel.cells.model.cellculture.TestUtils.assertSameCells;
+import static de.hipphampel.cells.model.cellculture.TestUtils.culture;
+import static de.hipphampel.cells.model.cellculture.TestUtils.lifeSystem;
+import static de.hipphampel.cells.model.cellculture.TestUtils.randomSoup;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.model.cellculture.Generator.State;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javafx.beans.value.ChangeListener;
+import org.junit.jupiter.api.Test;
+
+public class GeneratorTest {
+
+  // Not a power of two, so that HashLife needs several jumps
+  private static final int GENERATIONS = 100;
+
+  @Test
+  public void fastForward_sameAsStepping() throws InterruptedException {
+    assertFastForwardSameAsStepping(false);
+  }
+
+  @Test
+  public void fastForward_hashLife_sameAsStepping() throws InterruptedException {
+    assertFastForwardSameAsStepping(true);
+  }
+
+  private static void assertFastForwardSameAsStepping(boolean hashLife) throws InterruptedException {
+    CellSystem cellSystem = lifeSystem("3", "2-3");
+    Byte2DArray data = randomSoup(48, 32, 2, new Random(hashLife ? 1 : 2));
+    CellCulture fastForwarded = culture(data, 2, false);
+    CellCulture stepped = culture(data, 2, false);
+    SimulationPools pools = new SimulationPools(new SimulationPoolConfig(2, false, Thread.NORM_PRIORITY));
+    // Without UI, the updates meant for the FX thread are run directly by the generator
+    Generator fastForwarding = new Generator(cellSystem, fastForwarded, pools, Runnable::run);
+    Generator stepping = new Generator(cellSystem, stepped, pools, Runnable::run);
+    try {
+      assertTrue(fastForwarding.isHashLifeSupported());
+      fastForwarding.setHashLife(hashLife);
+      stepping.setHashLife(hashLife);
+
+      runAndAwaitIdle(fastForwarding, () -> fastForwarding.fastForward(GENERATIONS));
+      for (int i = 0; i < GENERATIONS; i++) {
+        runAndAwaitIdle(stepping, stepping::step);
+      }
+
+      assertEquals(GENERATIONS, stepping.getGeneration());
+      assertEquals(GENERATIONS, fastForwarding.getGeneration());
+      assertEquals(1.0, fastForwarding.progressProperty().get());
+      assertSameCells(stepped.getData(), fastForwarded.getData(), hashLife ? "HashLife" : "stepping engine");
+    } finally {
+      fastForwarding.close();
+      stepping.close();
+    }
+  }
+
+  private static void runAndAwaitIdle(Generator generator, Runnable action) throws InterruptedException {
+    CountDownLatch idle = new CountDownLatch(1);
+    ChangeListener<State> listener = (ov, oldState, newState) -> {
+      if (newState == State.IDLE) {
+        idle.countDown();
+      }
+    };
+    generator.stateProperty().addListener(listener);
+    try {
+      action.run();
+      assertTrue(idle.await(30, TimeUnit.SECONDS), "Generator did not return to IDLE");
+    } finally {
+      generator.stateProperty().removeListener(listener);
+    }
+  }
+}
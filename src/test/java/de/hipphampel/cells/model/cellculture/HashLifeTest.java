@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import static de.hipphampel.cells.model.cellculture.TestUtils.assertSameCells;
+import static de.hipphampel.cells.model.cellculture.TestUtils.culture;
+import static de.hipphampel.cells.model.cellculture.TestUtils.lifeSystem;
+import static de.hipphampel.cells.model.cellculture.TestUtils.randomSoup;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class HashLifeTest {
+
+  private static final int MAX_K = 5;
+
+  @Test
+  public void jump_sameAsSingleSteps() {
+    CellSystem cellSystem = lifeSystem("3", "2-3");
+    Random random = new Random(1);
+    for (int k = 0; k <= MAX_K; k++) {
+      Byte2DArray data = randomSoup(40, 30, 2, random);
+      HashLife stepped = HashLife.create(cellSystem);
+      HashLife jumped = HashLife.create(cellSystem);
+      assertNotNull(stepped);
+      stepped.load(data);
+      jumped.load(data);
+      for (int i = 0; i < 1 << k; i++) {
+        stepped.step();
+      }
+      jumped.jump(k);
+
+      // The cells might leave the loaded area by up to one cell per generation
+      int margin = (1 << k) + 1;
+      Byte2DArray expected = Byte2DArray.newInstance(40 + 2 * margin, 30 + 2 * margin);
+      Byte2DArray actual = Byte2DArray.newInstance(40 + 2 * margin, 30 + 2 * margin);
+      stepped.store(expected, -margin, -margin);
+      jumped.store(actual, -margin, -margin);
+      String message = "jump " + k;
+      assertSameCells(expected, actual, message);
+      assertEquals(1L << k, jumped.getGeneration(), message);
+      assertEquals(stepped.getPopulation(), jumped.getPopulation(), message);
+      assertEquals(stepped.getStateHash(), jumped.getStateHash(), message);
+    }
+  }
+
+  @Test
+  public void jump_sameAsSteppingInLargerCulture() {
+    CellSystem cellSystem = lifeSystem("3", "2-3");
+    Random random = new Random(2);
+    for (int k = 0; k <= MAX_K; k++) {
+      int n = 1 << k;
+      Byte2DArray data = randomSoup(50, 20, 2, random);
+      Simulation stepped = new Simulation(cellSystem, culture(data, 2, false));
+      Simulation jumped = new Simulation(cellSystem, culture(data, 2, false));
+      stepped.setHashLifeEnabled(true);
+      jumped.setHashLifeEnabled(true);
+      for (int i = 0; i < n; i++) {
+        stepped.step();
+      }
+      jumped.jump(k);
+
+      // HashLife computes an unbounded universe, whereas stepping stops the cells at the border, so the reference is
+      // computed in a culture with a margin the cells cannot cross within n generations
+      int margin = n + 1;
+      Byte2DArray padded = Byte2DArray.newInstance(50 + 2 * margin, 20 + 2 * margin);
+      for (int y = 0; y < 20; y++) {
+        for (int x = 0; x < 50; x++) {
+          padded.setUnsafe(x + margin, y + margin, data.getUnsafe(x, y));
+        }
+      }
+      Simulation reference = new Simulation(cellSystem, culture(padded, 2, false));
+      reference.step(n);
+      Byte2DArray expected = Byte2DArray.newInstance(50, 20);
+      for (int y = 0; y < 20; y++) {
+        for (int x = 0; x < 50; x++) {
+          expected.setUnsafe(x, y, reference.getData().getUnsafe(x + margin, y + margin));
+        }
+      }
+
+      String message = "jump " + k;
+      assertSameCells(expected, stepped.getData(), message);
+      assertSameCells(expected, jumped.getData(), message);
+      assertEquals(n, stepped.getGeneration(), message);
+      assertEquals(n, jumped.getGeneration(), message);
+    }
+  }
+
+  @Test
+  public void jump_wrappingCultureSameAsSingleSteps() {
+    CellSystem cellSystem = lifeSystem("3", "2-3");
+    Random random = new Random(3);
+    for (int k = 0; k <= MAX_K; k++) {
+      Byte2DArray data = randomSoup(50, 20, 2, random);
+      Simulation stepped = new Simulation(cellSystem, culture(data, 2, true));
+      Simulation jumped = new Simulation(cellSystem, culture(data, 2, true));
+      for (int i = 0; i < 1 << k; i++) {
+        stepped.step();
+      }
+      jumped.jump(k);
+
+      String message = "jump " + k;
+      assertSameCells(stepped.getData(), jumped.getData(), message);
+      assertEquals(1 << k, jumped.getGeneration(), message);
+    }
+  }
+
+  @Test
+  public void isHashLifeSupported() {
+    CellSystem cellSystem = lifeSystem("3", "2-3");
+    Byte2DArray data = Byte2DArray.newInstance(10, 10);
+    assertTrue(new Simulation(cellSystem, culture(data, 2, false)).isHashLifeSupported());
+    assertFalse(new Simulation(cellSystem, culture(data, 2, true)).isHashLifeSupported());
+    assertFalse(new Simulation(lifeSystem("0-3", "2-3"), culture(data, 2, false)).isHashLifeSupported());
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import static de.hipphampel.cells.model.cellculture.TestUtils.assertSameCells;
+import static de.hipphampel.cells.model.cellculture.TestUtils.culture;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.array2dops.model.Int2DArray;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.model.cellsystem.CellType;
+import de.hipphampel.cells.model.cellsystem.Condition;
+import de.hipphampel.cells.model.cellsystem.Neighbourhood;
+import de.hipphampel.cells.model.cellsystem.Ranges;
+import de.hipphampel.cells.model.cellsystem.Rule;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+public class SimulationTest {
+
+  private static final int WIDTH = 330;
+  private static final int HEIGHT = 140;
+  private static final int GENERATIONS = 10;
+
+  private enum Kind {
+    UNIFORM,
+    RINGS,
+    RANK_ONE,
+    ROWS,
+    RANDOM
+  }
+
+  @Test
+  public void step_uniformNeighbourhood() {
+    assertSameAsReference(Kind.UNIFORM, false);
+  }
+
+  @Test
+  public void step_ringNeighbourhood() {
+    assertSameAsReference(Kind.RINGS, false);
+  }
+
+  @Test
+  public void step_rankOneNeighbourhood() {
+    assertSameAsReference(Kind.RANK_ONE, false);
+  }
+
+  @Test
+  public void step_rowWeightedNeighbourhood() {
+    assertSameAsReference(Kind.ROWS, false);
+  }
+
+  @Test
+  public void step_randomNeighbourhood() {
+    assertSameAsReference(Kind.RANDOM, false);
+  }
+
+  @Test
+  public void step_neighbourhoodsPerCellType() {
+    assertSameAsReference(Kind.RINGS, true);
+    assertSameAsReference(Kind.RANDOM, true);
+  }
+
+  // The soup fills only a part of the culture, and empty cells without any neighbours stay empty, so that most tiles
+  // are stable
+  private static void assertSameAsReference(Kind kind, boolean neighbourhoodPerCellType) {
+    Random random = new Random(kind.ordinal());
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int radius = 2; radius <= 4; radius++) {
+        for (boolean wrapAround : new boolean[]{false, true}) {
+          int cellTypeCount = 3 + random.nextInt(3);
+          CellSystem cellSystem = randomSystem(kind, radius, cellTypeCount, neighbourhoodPerCellType, random);
+          Byte2DArray expected = Byte2DArray.newInstance(WIDTH, HEIGHT);
+          int x0 = wrapAround ? 0 : 70;
+          for (int y = 0; y < 30; y++) {
+            for (int x = x0; x < x0 + 50; x++) {
+              expected.setUnsafe(x, y, (byte) (random.nextInt(2) == 0 ? random.nextInt(cellTypeCount) : 0));
+            }
+          }
+
+          Simulation simulation = new Simulation(cellSystem, culture(expected, cellTypeCount, wrapAround), pool);
+          for (int generation = 1; generation <= GENERATIONS; generation++) {
+            expected = computeReference(cellSystem, expected, wrapAround);
+            simulation.step();
+            assertSameCells(expected, simulation.getData(), kind + ", radius " + radius
+                + (wrapAround ? ", wrapping" : "") + ", generation " + generation);
+          }
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // Evaluates the rules of the cell system cell by cell, counting one neighbour at a time
+  private static Byte2DArray computeReference(CellSystem cellSystem, Byte2DArray data, boolean wrapAround) {
+    int width = data.getWidth();
+    int height = data.getHeight();
+    Byte2DArray next = Byte2DArray.newInstance(width, height);
+    int[] counters = new int[cellSystem.getCellTypeCount()];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        CellType cellType = cellSystem.getCellType(data.getUnsafe(x, y));
+        Neighbourhood neighbourhood = cellType.getNeighbourhood() == null ? cellSystem.getNeighbourhood()
+            : cellType.getNeighbourhood();
+        Int2DArray weights = neighbourhood.getWeightsArray();
+        int r = neighbourhood.getRadius();
+        Arrays.fill(counters, 0);
+        for (int dy = -r; dy <= r; dy++) {
+          for (int dx = -r; dx <= r; dx++) {
+            int nx = wrapAround ? Math.floorMod(x + dx, width) : x + dx;
+            int ny = wrapAround ? Math.floorMod(y + dy, height) : y + dy;
+            if ((dx == 0 && dy == 0) || nx < 0 || nx >= width || ny < 0 || ny >= height) {
+              continue;
+            }
+            int neighbour = data.getUnsafe(nx, ny);
+            if (neighbour != 0) {
+              counters[0] += weights.getUnsafe(dx + r, dy + r);
+              counters[neighbour] += weights.getUnsafe(dx + r, dy + r);
+            }
+          }
+        }
+        next.setUnsafe(x, y, (byte) evaluateRules(cellType, counters));
+      }
+    }
+    return next;
+  }
+
+  private static int evaluateRules(CellType cellType, int[] counters) {
+    for (Rule rule : cellType.getRules()) {
+      boolean matches = true;
+      for (Condition condition : rule.getConditions()) {
+        matches &= condition.getRanges().contains(counters[condition.getCellType()]);
+      }
+      if (matches) {
+        return rule.getTargetCellType();
+      }
+    }
+    return cellType.getDefaultCellType();
+  }
+
+  private static CellSystem randomSystem(Kind kind, int radius, int cellTypeCount, boolean neighbourhoodPerCellType,
+      Random random) {
+    CellSystem cellSystem = new CellSystem();
+    cellSystem.setNeighbourhood(randomNeighbourhood(kind, radius, random));
+    for (int i = 0; i < cellTypeCount; i++) {
+      CellType cellType = cellSystem.newCellType();
+      if (neighbourhoodPerCellType && random.nextBoolean()) {
+        cellType.setNeighbourhood(randomNeighbourhood(kind, 1 + random.nextInt(radius), random));
+      }
+    }
+    for (int i = 0; i < cellTypeCount; i++) {
+      CellType cellType = cellSystem.getCellType(i);
+      cellType.setDefaultCellType(i == 0 ? 0 : random.nextInt(cellTypeCount));
+      int ruleCount = 1 + random.nextInt(3);
+      for (int j = 0; j < ruleCount; j++) {
+        Rule rule = cellType.newRule();
+        rule.setTargetCellType(random.nextInt(cellTypeCount));
+        if (i == 0) {
+          // Keeps empty cells without neighbours empty
+          rule.newCondition(0, new Ranges("1-1000"));
+        }
+        int conditionCount = 1 + random.nextInt(2);
+        for (int k = 0; k < conditionCount; k++) {
+          int lo = random.nextInt(12);
+          rule.newCondition(random.nextInt(cellTypeCount), new Ranges(lo + "-" + (lo + random.nextInt(10))));
+        }
+      }
+    }
+    return cellSystem;
+  }
+
+  private static Neighbourhood randomNeighbourhood(Kind kind, int radius, Random random) {
+    int size = 2 * radius + 1;
+    int[] ringWeights = random.ints(radius + 1, 0, 4).toArray();
+    int[] u = random.ints(size, 0, 3).toArray();
+    int[] v = random.ints(size, 1, 3).toArray();
+    List<Integer> weights = new ArrayList<>();
+    for (int dy = -radius; dy <= radius; dy++) {
+      for (int dx = -radius; dx <= radius; dx++) {
+        weights.add(switch (kind) {
+          case UNIFORM -> 1;
+          case RINGS -> ringWeights[Math.max(Math.abs(dx), Math.abs(dy))];
+          case RANK_ONE -> u[dx + radius] * v[dy + radius];
+          case ROWS -> 1 + Math.abs(dy);
+          case RANDOM -> random.nextInt(4);
+        });
+      }
+    }
+    return new Neighbourhood(weights);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import de.hipphampel.array2dops.model.Byte2DArray;
+import de.hipphampel.cells.model.cellsystem.CellSystem;
+import de.hipphampel.cells.model.cellsystem.CellType;
+import de.hipphampel.cells.model.cellsystem.Neighbourhood;
+import de.hipphampel.cells.model.cellsystem.Ranges;
+import de.hipphampel.cells.model.cellsystem.Rule;
+import java.util.Random;
+
+final class TestUtils {
+
+  private TestUtils() {
+  }
+
+  // A cell system with an empty and a living cell type, the rules are given as ranges of the number of living
+  // neighbours; without survive ranges, living cells always die
+  static CellSystem lifeSystem(String birth, String survive) {
+    CellSystem cellSystem = new CellSystem();
+    cellSystem.setNeighbourhood(new Neighbourhood());
+    CellType empty = cellSystem.newCellType();
+    CellType living = cellSystem.newCellType();
+    empty.setDefaultCellType(0);
+    Rule birthRule = empty.newRule();
+    birthRule.setTargetCellType(1);
+    birthRule.newCondition(0, new Ranges(birth));
+    living.setDefaultCellType(0);
+    if (survive != null) {
+      Rule surviveRule = living.newRule();
+      surviveRule.setTargetCellType(1);
+      surviveRule.newCondition(0, new Ranges(survive));
+    }
+    return cellSystem;
+  }
+
+  static CellCulture culture(Byte2DArray data, int cellTypeCount, boolean wrapAround) {
+    return new CellCulture("id", "name", "description", data.getWidth(), data.getHeight(), cellTypeCount, wrapAround,
+        null, data.copy());
+  }
+
+  // About a third of the cells get a random non-empty cell type
+  static Byte2DArray randomSoup(int width, int height, int cellTypeCount, Random random) {
+    Byte2DArray data = Byte2DArray.newInstance(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        data.setUnsafe(x, y, (byte) (random.nextInt(3) == 0 ? 1 + random.nextInt(cellTypeCount - 1) : 0));
+      }
+    }
+    return data;
+  }
+
+  static long populationOf(Byte2DArray data) {
+    long population = 0;
+    for (int y = 0; y < data.getHeight(); y++) {
+      for (int x = 0; x < data.getWidth(); x++) {
+        population += data.getUnsafe(x, y) != 0 ? 1 : 0;
+      }
+    }
+    return population;
+  }
+
+  static void assertSameCells(Byte2DArray expected, Byte2DArray actual, String message) {
+    assertEquals(expected.getWidth(), actual.getWidth(), message);
+    assertEquals(expected.getHeight(), actual.getHeight(), message);
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        if (expected.getUnsafe(x, y) != actual.getUnsafe(x, y)) {
+          assertEquals(expected.getUnsafe(x, y), actual.getUnsafe(x, y), message + ", cell " + x + "/" + y);
+        }
+      }
+    }
+  }
+}
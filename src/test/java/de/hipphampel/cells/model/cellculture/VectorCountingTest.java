@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ * Copyright © 2023 Johannes Hampel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.hipphampel.cells.model.cellculture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class VectorCountingTest {
+
+  private static final int MAX_LENGTH = 100;
+
+  @Test
+  public void count_sameAsScalarCounting() {
+    // The class must not be loaded without the module, see Environment
+    assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(), "Vector API not available");
+    Random random = new Random(1);
+    for (int i = 0; i < 200; i++) {
+      int radius = 1 + random.nextInt(3);
+      int cellTypeCount = 2 + random.nextInt(4);
+      int stride = MAX_LENGTH + 2 * radius;
+      int[][] neighbourhood = randomNeighbourhood(radius, stride, random);
+      VectorCounting counting = VectorCounting.create(neighbourhood[0], neighbourhood[1], cellTypeCount, MAX_LENGTH);
+      assumeTrue(counting != null, "Vector species too small");
+
+      byte[] cells = new byte[stride * (2 * radius + 1)];
+      for (int j = 0; j < cells.length; j++) {
+        cells[j] = (byte) (random.nextInt(3) == 0 ? random.nextInt(cellTypeCount) : 0);
+      }
+      // Lengths not being a multiple of the vector length are counted partly by the scalar tail loop
+      int length = 1 + random.nextInt(MAX_LENGTH);
+      int index = radius * stride + radius;
+      counting.count(cells, index, length, false);
+
+      int[] actual = new int[cellTypeCount];
+      for (int x = 0; x < length; x++) {
+        int[] expected = countScalar(cells, index + x, neighbourhood[0], neighbourhood[1], cellTypeCount);
+        counting.getCounters(x, actual);
+        assertArrayEquals(expected, actual, "case " + i + ", position " + x);
+      }
+    }
+  }
+
+  // Returns the index offsets and the weights of the non-zero neighbours, some being negative
+  private static int[][] randomNeighbourhood(int radius, int stride, Random random) {
+    int size = 2 * radius + 1;
+    int[] offsets = new int[size * size - 1];
+    int[] weights = new int[size * size - 1];
+    int count = 0;
+    for (int dy = -radius; dy <= radius; dy++) {
+      for (int dx = -radius; dx <= radius; dx++) {
+        int weight = random.nextInt(6) - 1;
+        if ((dx != 0 || dy != 0) && weight != 0) {
+          offsets[count] = dy * stride + dx;
+          weights[count] = weight;
+          count++;
+        }
+      }
+    }
+    return new int[][]{Arrays.copyOf(offsets, count), Arrays.copyOf(weights, count)};
+  }
+
+  // Counts one neighbour at a time like Environment without row counting; counter 0 holds the weight of all
+  // non-empty neighbours
+  private static int[] countScalar(byte[] cells, int index, int[] offsets, int[] weights, int cellTypeCount) {
+    int[] counters = new int[cellTypeCount];
+    for (int k = 0; k < offsets.length; k++) {
+      int cellTypeId = cells[index + offsets[k]];
+      if (cellTypeId != 0) {
+        counters[0] += weights[k];
+        counters[cellTypeId] += weights[k];
+      }
+    }
+    return counters;
+  }
+}